@@ -0,0 +1,29 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.annotation.InBusinessContext;
+
+/**
+ * Business methods instrumented by the {@code BusinessContextAspect}, and their hand-written equivalents.
+ */
+public class AnnotatedService {
+
+    @InBusinessContext("Processing order {0}, line {1}")
+    public int woven(long orderId, int line) {
+        return line;
+    }
+
+    public int manual(long orderId, int line) {
+        BusinessContext.push(() -> "Processing order " + orderId + ", line " + line);
+        try {
+            return line;
+        } finally {
+            BusinessContext.pop();
+        }
+    }
+
+    public int bare(long orderId, int line) {
+        return line;
+    }
+
+}
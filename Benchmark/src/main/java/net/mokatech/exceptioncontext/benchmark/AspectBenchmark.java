@@ -0,0 +1,51 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the woven {@code @InBusinessContext} advice, compared to manual push/pop calls and to the
+ * subclass generated at compile time by the {@code BusinessContextProcessor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AspectBenchmark {
+
+    private final AnnotatedService service = new AnnotatedService();
+    private final InstrumentedService instrumentedService = new BusinessContextAwareInstrumentedService();
+
+    private long orderId = 42;
+    private int line = 7;
+
+    @Benchmark
+    public int bare(ContextState context) {
+        return service.bare(orderId, line);
+    }
+
+    @Benchmark
+    public int manual(ContextState context) {
+        return service.manual(orderId, line);
+    }
+
+    @Benchmark
+    public int woven(ContextState context) {
+        return service.woven(orderId, line);
+    }
+
+    @Benchmark
+    public int generated(ContextState context) {
+        return instrumentedService.generated(orderId, line);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int wovenContended(ContextState context) {
+        return service.woven(orderId, line);
+    }
+
+}
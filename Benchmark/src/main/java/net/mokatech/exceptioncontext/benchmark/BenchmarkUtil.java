@@ -0,0 +1,38 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+public final class BenchmarkUtil {
+
+    private BenchmarkUtil() {
+    }
+
+    /**
+     * Reset the current thread's context, and fill it with {@code depth} elements
+     * @param depth The wanted stack depth
+     */
+    public static void fillContext(int depth) {
+        BusinessContext.reset();
+        for (int i = 0; i < depth; i++) {
+            int level = i;
+            BusinessContext.push(() -> "In level " + level + " of the benchmark");
+        }
+    }
+
+    /** @return A {@code PrintStream} discarding everything written to it */
+    public static PrintStream nullPrintStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+}
@@ -0,0 +1,72 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+import net.mokatech.exceptioncontext.FrameTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the raw cost of managing the {@link BusinessContext} stack, at various depths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BusinessContextBenchmark {
+
+    private static final Supplier<String> CONTEXT = () -> "In the benchmark";
+    private static final FrameTemplate ORDER_LINE = FrameTemplate.of("Processing order {0}, line {1}", FrameTemplate.SlotType.LONG, FrameTemplate.SlotType.INT);
+
+    private long orderId = 42;
+    private int line = 7;
+
+    @Benchmark
+    public void pushPop(ContextState context) {
+        BusinessContext.push(CONTEXT);
+        BusinessContext.pop();
+    }
+
+    @Benchmark
+    public void pushPopCapturingLambda(ContextState context) {
+        long order = orderId;
+        int orderLine = line;
+        BusinessContext.push(() -> "Processing order " + order + ", line " + orderLine);
+        BusinessContext.pop();
+    }
+
+    @Benchmark
+    public void pushPopStructured(ContextState context) {
+        BusinessContext.push(ORDER_LINE.frame(orderId, line));
+        BusinessContext.pop();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void pushPopContended(ContextState context) {
+        BusinessContext.push(CONTEXT);
+        BusinessContext.pop();
+    }
+
+    @Benchmark
+    public BusinessContextSnapshot snapshot(ContextState context) {
+        return BusinessContext.snapshot();
+    }
+
+    @Benchmark
+    public List<Supplier<String>> getAsList(ContextState context) {
+        return BusinessContext.get();
+    }
+
+    @Benchmark
+    public BusinessContextSnapshot snapshotRestore(ContextState context) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return BusinessContext.restore(BusinessContext.restore(snapshot));
+    }
+
+}
@@ -0,0 +1,89 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.CapturePolicy;
+import net.mokatech.exceptioncontext.FlyweightBusinessException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of constructing a {@link BusinessException}, compared to a plain {@code Exception}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusinessExceptionBenchmark {
+
+    private static final FlyweightBusinessException FLYWEIGHT = FlyweightBusinessException.of("BUSINESS_PROBLEM", "Oh noes ! A business problem !");
+
+    static {
+        CapturePolicy.register(UncapturedBusinessException.class, CapturePolicy.never());
+    }
+
+    @Benchmark
+    public Exception plainException(ContextState context) {
+        return new Exception("Oh noes ! A business problem !");
+    }
+
+    @Benchmark
+    public Exception plainStacklessException(ContextState context) {
+        return new StacklessException("Oh noes ! A business problem !");
+    }
+
+    @Benchmark
+    public BusinessException businessException(ContextState context) {
+        return new BusinessException("Oh noes ! A business problem !");
+    }
+
+    @Benchmark
+    public BusinessException businessExceptionNotCaptured(ContextState context) {
+        return new UncapturedBusinessException("Oh noes ! A business problem !");
+    }
+
+    @Benchmark
+    public BusinessException businessExceptionWithStackTrace(ContextState context) {
+        return new BusinessException("Oh noes ! A business problem !", true);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public BusinessException businessExceptionContended(ContextState context) {
+        return new BusinessException("Oh noes ! A business problem !");
+    }
+
+    @Benchmark
+    public Object throwAndCatch(ContextState context) {
+        try {
+            throw new BusinessException("Oh noes ! A business problem !");
+        } catch (BusinessException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object throwAndCatchFlyweight(ContextState context) {
+        try {
+            throw FLYWEIGHT;
+        } catch (FlyweightBusinessException e) {
+            return e;
+        }
+    }
+
+    /** Exception whose context capture is suppressed */
+    private static class UncapturedBusinessException extends BusinessException {
+        UncapturedBusinessException(String message) {
+            super(message);
+        }
+    }
+
+    /** Baseline : the cheapest possible exception */
+    private static class StacklessException extends Exception {
+        StacklessException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-thread state filling the {@code BusinessContext} of each benchmark thread with {@code depth} elements.
+ * The context being thread-local, it is filled from the benchmark thread itself before each iteration.
+ */
+@State(Scope.Thread)
+public class ContextState {
+
+    @Param({"0", "10", "20"})
+    public int depth;
+
+    @Setup(Level.Iteration)
+    public void fillContext() {
+        BenchmarkUtil.fillContext(depth);
+    }
+
+}
@@ -0,0 +1,75 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.concurrent.BusinessContextAwareExecutorServiceDecorator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-task overhead of {@link BusinessContextAwareExecutorServiceDecorator} compared to a bare pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorServiceBenchmark {
+
+    private static final Callable<Integer> TASK = () -> 42;
+
+    @Param({"100"})
+    public int batchSize;
+
+    private ExecutorService pool;
+    private ExecutorService decoratedPool;
+    private List<Callable<Integer>> batch;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        decoratedPool = new BusinessContextAwareExecutorServiceDecorator(pool);
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(TASK);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public Integer submitBare(ContextState context) throws ExecutionException, InterruptedException {
+        return pool.submit(TASK).get();
+    }
+
+    @Benchmark
+    public Integer submitDecorated(ContextState context) throws ExecutionException, InterruptedException {
+        return decoratedPool.submit(TASK).get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer submitDecoratedContended(ContextState context) throws ExecutionException, InterruptedException {
+        return decoratedPool.submit(TASK).get();
+    }
+
+    @Benchmark
+    public int invokeAllBare(ContextState context) throws InterruptedException {
+        return pool.invokeAll(batch).size();
+    }
+
+    @Benchmark
+    public int invokeAllDecorated(ContextState context) throws InterruptedException {
+        return decoratedPool.invokeAll(batch).size();
+    }
+
+}
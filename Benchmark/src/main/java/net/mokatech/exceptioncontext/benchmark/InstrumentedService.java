@@ -0,0 +1,18 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.annotation.InBusinessContext;
+import net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext;
+
+/**
+ * Business methods instrumented at compile time by the {@code BusinessContextProcessor}, which generates the
+ * {@code BusinessContextAwareInstrumentedService} subclass.
+ */
+@InstrumentBusinessContext
+public class InstrumentedService {
+
+    @InBusinessContext("Processing order {0}, line {1}")
+    public int generated(long orderId, int line) {
+        return line;
+    }
+
+}
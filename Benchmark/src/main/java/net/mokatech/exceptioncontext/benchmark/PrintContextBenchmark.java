@@ -0,0 +1,69 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.ContextRenderer;
+import net.mokatech.exceptioncontext.FrameTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of rendering a {@link BusinessException}'s context, and the current context for log lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrintContextBenchmark {
+
+    private static final FrameTemplate ITEM = FrameTemplate.of("Processing item {0}", FrameTemplate.SlotType.LONG);
+
+    @Param({"1", "10", "20"})
+    public int depth;
+
+    private BusinessException exception;
+    private PrintStream printer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkUtil.fillContext(depth);
+        exception = new BusinessException("Oh noes ! A business problem !");
+        printer = BenchmarkUtil.nullPrintStream();
+    }
+
+    @Benchmark
+    public void printContext() {
+        exception.printContext(printer, "\n while ");
+    }
+
+    @Benchmark
+    public int renderToThreadLocalBuffer() {
+        return ContextRenderer.DEFAULT.renderToThreadLocalBuffer(exception).length();
+    }
+
+    @Benchmark
+    public String renderedContext() {
+        return BusinessContext.getRenderedContext();
+    }
+
+    @Benchmark
+    public String renderedContextWithNewFrame() {
+        BusinessContext.push(ITEM.frame(42));
+        try {
+            return BusinessContext.getRenderedContext();
+        } finally {
+            BusinessContext.pop();
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void printContextContended() {
+        exception.printContext(printer, "\n while ");
+    }
+
+}
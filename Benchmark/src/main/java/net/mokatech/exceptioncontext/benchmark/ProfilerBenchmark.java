@@ -0,0 +1,55 @@
+package net.mokatech.exceptioncontext.benchmark;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextProfiler;
+import net.mokatech.exceptioncontext.FrameTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the {@link BusinessContextProfiler} on pushing and popping frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProfilerBenchmark {
+
+    private static final FrameTemplate ORDER_LINE = FrameTemplate.of("Processing order {0}, line {1}", FrameTemplate.SlotType.LONG, FrameTemplate.SlotType.INT);
+
+    @Param({"false", "true"})
+    private boolean profiled;
+
+    private long orderId = 42;
+    private int line = 7;
+
+    @Setup
+    public void setUp() {
+        if (profiled) {
+            BusinessContextProfiler.enable();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BusinessContextProfiler.disable();
+        BusinessContextProfiler.reset();
+    }
+
+    @Benchmark
+    public void pushPopStructured(ContextState context) {
+        BusinessContext.push(ORDER_LINE.frame(orderId, line));
+        BusinessContext.pop();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void pushPopContended(ContextState context) {
+        BusinessContext.push(ORDER_LINE.frame(orderId, line));
+        BusinessContext.pop();
+    }
+
+}
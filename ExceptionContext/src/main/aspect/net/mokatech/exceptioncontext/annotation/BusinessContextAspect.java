@@ -1,41 +1,39 @@
 package net.mokatech.exceptioncontext.annotation;
 
 import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.MessageTemplate;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.reflect.MethodSignature;
 
-import java.lang.reflect.Method;
-import java.text.MessageFormat;
-import java.util.function.Supplier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Instruments the method annotated with {@link ResetBusinessContext} or {@link InBusinessContext}
- * to manage the {@link BusinessContext} accordingly
+ * to manage the {@link BusinessContext} accordingly.
+ * Classes annotated with {@link InstrumentBusinessContext} are instrumented at compile time instead, and ignored here.
  */
 @Aspect
 public class BusinessContextAspect {
 
+    /** Compiled templates, per join point */
+    private static final ConcurrentMap<JoinPoint.StaticPart, MessageTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
     /**
      * Pushes / pops the method's context on/from the BusinessContext
      * @param joinPoint The instrumented method
+     * @param businessContext The method's annotation, resolved and cached by AspectJ once per join point
      * @return The method's result
      * @throws Throwable Exception thrown by the instrumented method
      */
-    @Around("execution(* *(..)) && @annotation(net.mokatech.exceptioncontext.annotation.InBusinessContext)")
-    public Object inBusinessContext(final ProceedingJoinPoint joinPoint) throws Throwable {
-        InBusinessContext businessContext = getAnnotation(joinPoint);
-
-        // Cannot use Java 8 features because AspectJ doesn't support them (yet ?)
-        Supplier<String> context = new Supplier<String>() {
-            @Override
-            public String get() {
-                return MessageFormat.format(businessContext.value(), joinPoint.getArgs());
-            }
-        };
+    @Around("execution(* *(..)) && @annotation(businessContext) && !@within(net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext)")
+    public Object inBusinessContext(final ProceedingJoinPoint joinPoint, final InBusinessContext businessContext) throws Throwable {
+        MessageTemplate template = getTemplate(joinPoint.getStaticPart(), businessContext);
 
-        BusinessContext.push(context);
+        // Only capture the arguments (not the whole join point) if the template actually uses them
+        BusinessContext.push(template.needsArguments() ? template.bind(joinPoint.getArgs()) : template.bind());
         try {
             return joinPoint.proceed();
         } finally {
@@ -44,14 +42,21 @@ public class BusinessContextAspect {
     }
 
     /**
-     * Retrieves the {@link InBusinessContext} annotation from the {@code {@link ProceedingJoinPoint}}
-     * @param joinPoint The joinpoint
-     * @return The annotation present on this jointpoint
+     * Retrieves the compiled template associated with the given join point, compiling it on first use
+     * @param staticPart The join point's static part
+     * @param businessContext The annotation present on this join point
+     * @return The compiled template
      */
-    private InBusinessContext getAnnotation(ProceedingJoinPoint joinPoint) {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
-        return method.getAnnotation(InBusinessContext.class);
+    private MessageTemplate getTemplate(JoinPoint.StaticPart staticPart, InBusinessContext businessContext) {
+        MessageTemplate template = TEMPLATES.get(staticPart);
+        if (template == null) {
+            template = MessageTemplate.compile(businessContext.value());
+            MessageTemplate existing = TEMPLATES.putIfAbsent(staticPart, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
     }
 
     /**
@@ -60,7 +65,7 @@ public class BusinessContextAspect {
      * @return The method's result
      * @throws Throwable Exception thrown by the instrumented method
      */
-    @Around("@annotation(net.mokatech.exceptioncontext.annotation.ResetBusinessContext) && execution(* *(..))")
+    @Around("@annotation(net.mokatech.exceptioncontext.annotation.ResetBusinessContext) && execution(* *(..)) && !@within(net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext)")
     public Object resetBusinessContext(final ProceedingJoinPoint joinPoint) throws Throwable {
         BusinessContext.reset();
         return joinPoint.proceed();
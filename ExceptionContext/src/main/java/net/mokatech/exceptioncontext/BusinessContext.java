@@ -1,38 +1,214 @@
 package net.mokatech.exceptioncontext;
 
-import java.util.ArrayList;
+import net.mokatech.exceptioncontext.holder.BusinessContextHolderStrategy;
+import net.mokatech.exceptioncontext.holder.InheritableThreadLocalBusinessContextHolderStrategy;
+import net.mokatech.exceptioncontext.holder.ThreadLocalBusinessContextHolderStrategy;
+
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.function.Supplier;
 
 /**
- * Maintains a "context" as a stack of {@code String}s
+ * <p>Maintains a "context" as a stack of {@link ContextFrame}s
+ * <p>The context is stored by a {@link BusinessContextHolderStrategy}, which can be chosen at startup either with the
+ * {@value #SYSTEM_PROPERTY} system property, or by calling {@link #setStrategyName(String)} or
+ * {@link #setStrategy(BusinessContextHolderStrategy)}. The strategy should not be changed afterwards, as the contexts
+ * stored by the previous strategy would be lost.
+ * <p>Frames should be popped in a {@code finally} block, or pushed with {@link #open(ContextFrame)} in a
+ * {@code try}-with-resources statement. The {@link BusinessContextGuard} bounds the stacks in case they are not.
  */
 public class BusinessContext {
 
-    private static final ThreadLocal<List<Supplier<String>>> CONTEXT = ThreadLocal.withInitial(ArrayList::new);
+    /** Stores the context in a {@code ThreadLocal} (default) */
+    public static final String MODE_THREADLOCAL = "MODE_THREADLOCAL";
+    /** Stores the context in an {@code InheritableThreadLocal} */
+    public static final String MODE_INHERITABLETHREADLOCAL = "MODE_INHERITABLETHREADLOCAL";
+    /**
+     * Stores the context in a {@code ScopedValue} (requires Java 25 or later, and a library built with a JDK 25+ : the
+     * strategy only exists in the {@code META-INF/versions/25} part of the multi-release JAR)
+     */
+    public static final String MODE_SCOPEDVALUE = "MODE_SCOPEDVALUE";
+    /** System property selecting the strategy : one of the {@code MODE_*} constants, or a strategy class name */
+    public static final String SYSTEM_PROPERTY = "net.mokatech.exceptioncontext.strategy";
+
+    private static final String SCOPEDVALUE_STRATEGY_CLASS = "net.mokatech.exceptioncontext.holder.ScopedValueBusinessContextHolderStrategy";
+
+    private static BusinessContextHolderStrategy strategy = createStrategy(System.getProperty(SYSTEM_PROPERTY, MODE_THREADLOCAL));
+
+    private static BusinessContextHolderStrategy createStrategy(String strategyName) {
+        switch (strategyName) {
+            case MODE_THREADLOCAL:
+                return new ThreadLocalBusinessContextHolderStrategy();
+            case MODE_INHERITABLETHREADLOCAL:
+                return new InheritableThreadLocalBusinessContextHolderStrategy();
+            case MODE_SCOPEDVALUE:
+                return createScopedValueStrategy();
+            default:
+                try {
+                    return (BusinessContextHolderStrategy) Class.forName(strategyName).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Invalid business context strategy : " + strategyName, e);
+                }
+        }
+    }
+
+    private static BusinessContextHolderStrategy createScopedValueStrategy() {
+        try {
+            return (BusinessContextHolderStrategy) Class.forName(SCOPEDVALUE_STRATEGY_CLASS).getConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalArgumentException("The " + MODE_SCOPEDVALUE + " strategy requires Java 25 or later, and a library "
+                    + "built with a JDK 25+ (it is only shipped in the META-INF/versions/25 part of the JAR).", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Invalid business context strategy : " + MODE_SCOPEDVALUE, e);
+        }
+    }
+
+    /**
+     * Change the strategy storing the context. Should only be called at startup.
+     * @param strategyName One of the {@code MODE_*} constants, or a strategy class name [not null]
+     */
+    public static void setStrategyName(String strategyName) {
+        Objects.requireNonNull(strategyName, "The strategy name must not be null.");
+        strategy = createStrategy(strategyName);
+    }
+
+    /**
+     * Change the strategy storing the context. Should only be called at startup.
+     * @param newStrategy The new strategy [not null]
+     */
+    public static void setStrategy(BusinessContextHolderStrategy newStrategy) {
+        Objects.requireNonNull(newStrategy, "The strategy must not be null.");
+        strategy = newStrategy;
+    }
+
+    /**
+     * Get the strategy storing the context
+     * @return The current strategy
+     */
+    public static BusinessContextHolderStrategy getStrategy() {
+        return strategy;
+    }
 
     /**
      * Reset the stack
      */
     public static void reset() {
-        CONTEXT.set(new ArrayList<>());
+        strategy.clearContext();
     }
 
     /**
-     * Push a new context on the stack
+     * Push a new context on the stack, as a legacy frame
      * @param context The context to push
      */
     public static void push(Supplier<String> context) {
-        CONTEXT.get().add(context);
+        push(ContextFrame.of(context));
+    }
+
+    /**
+     * Push a new context on the stack, as a legacy frame identified by the given key
+     * @param key The key identifying the business step, eg. for the {@link BusinessContextProfiler} [not null]
+     * @param context The context to push
+     */
+    public static void push(String key, Supplier<String> context) {
+        push(ContextFrame.of(key, context));
+    }
+
+    /**
+     * Push a new frame on the stack
+     * @param frame The frame to push [not null]
+     */
+    public static void push(ContextFrame frame) {
+        pushNode(frame);
+    }
+
+    /** @return The stack holding the pushed frame on top */
+    private static BusinessContextSnapshot pushNode(ContextFrame frame) {
+        BusinessContextHolderStrategy holder = strategy;
+        BusinessContextSnapshot current = holder.getContext();
+        BusinessContextSnapshot next = BusinessContextProfiler.enabled ? BusinessContextProfiler.push(current, frame) : current.push(frame);
+        int maxDepth = BusinessContextGuard.maxDepth;
+        if (next.depth() > maxDepth) {
+            next = BusinessContextGuard.limitDepth(next, maxDepth);
+        }
+        if (BusinessContextMetrics.enabled) {
+            BusinessContextMetrics.recordPush(next.depth());
+        }
+        holder.setContext(next);
+        return next;
+    }
+
+    /**
+     * Push a new frame on the stack, and return a scope popping it when closed
+     * @param frame The frame to push [not null]
+     * @return The scope, to be closed by the current thread (eg. with a {@code try}-with-resources statement)
+     */
+    public static BusinessContextScope open(ContextFrame frame) {
+        return new BusinessContextScope(pushNode(frame));
+    }
+
+    /**
+     * Push a new context on the stack, as a legacy frame identified by the given key, and return a scope popping it
+     * when closed
+     * @param key The key identifying the business step [not null]
+     * @param context The context to push
+     * @return The scope, to be closed by the current thread (eg. with a {@code try}-with-resources statement)
+     */
+    public static BusinessContextScope open(String key, Supplier<String> context) {
+        return open(ContextFrame.of(key, context));
     }
 
     /**
      * Pop the latest context from the stack
      */
     public static void pop() {
-        List<Supplier<String>> context = CONTEXT.get();
-        context.remove(context.size() - 1);
+        BusinessContextHolderStrategy holder = strategy;
+        holder.setContext(pop(holder.getContext()));
+    }
+
+    private static BusinessContextSnapshot pop(BusinessContextSnapshot current) {
+        BusinessContextSnapshot parent = current.pop();
+        if (current.isProfiled()) {
+            BusinessContextProfiler.pop(current);
+        }
+        if (BusinessContextMetrics.enabled) {
+            BusinessContextMetrics.recordPop();
+        }
+        return parent;
+    }
+
+    /** Pop the given scope's frame, and the frames leaked on top of it */
+    static void close(BusinessContextScope scope) {
+        BusinessContextHolderStrategy holder = strategy;
+        BusinessContextSnapshot current = holder.getContext();
+        // Scopes are matched by the stack node they pushed, as frames may be shared (eg. by constant templates)
+        BusinessContextSnapshot opened = scope.getNode();
+        if (current == opened) {
+            holder.setContext(pop(current));
+            return;
+        }
+        BusinessContextSnapshot node = current;
+        while (!node.isEmpty() && node != opened) {
+            node = node.pop();
+        }
+        if (node.isEmpty()) {
+            if (!current.isTruncated()) {
+                throw new IllegalStateException("The frame of the " + scope + " is not on the business context stack anymore.");
+            }
+            // The guard's truncation copied the nodes it kept : the scope's node is found back by its depth instead,
+            // and when its frame was dropped, the frames above the truncation are popped instead
+            node = current;
+            for (int above = current.pushedDepth() - opened.pushedDepth(); above > 0 && !node.isEmpty(); above--) {
+                node = node.pop();
+            }
+            if (current.pushedDepth() < opened.pushedDepth() || !node.isEmpty() && node.peek() != opened.peek()) {
+                throw new IllegalStateException("The frame of the " + scope + " is not on the business context stack anymore.");
+            }
+        }
+        if (node != current) {
+            BusinessContextGuard.reportLeak(scope, node, current);
+        }
+        holder.setContext(pop(node));
     }
 
     /**
@@ -41,7 +217,7 @@ public class BusinessContext {
      */
     public static void set(List<Supplier<String>> newContext) {
         Objects.requireNonNull(newContext, "The new context must not be null.");
-        CONTEXT.set(newContext);
+        strategy.setContext(BusinessContextSnapshot.of(newContext));
     }
 
     /**
@@ -49,7 +225,83 @@ public class BusinessContext {
      * @return A copy of the current context.
      */
     public static List<Supplier<String>> get() {
-        return new ArrayList<>(CONTEXT.get());
+        return strategy.getContext().toList();
+    }
+
+    /**
+     * Capture the current context. This does not copy anything, as snapshots are immutable, unless the context holds
+     * {@link CursorFrame}s : they are then frozen with their current values. Each node knows whether a cursor lies
+     * beneath it, so that stacks without cursors are captured in constant time.
+     * @return The current context
+     */
+    public static BusinessContextSnapshot snapshot() {
+        BusinessContextSnapshot snapshot = strategy.getContext();
+        return snapshot.freeze();
+    }
+
+    /**
+     * Render the current context on a single line, eg. for log lines (as a {@code MDC} value, or appended to the
+     * message). Renderings are cached by the snapshots, so that rendering the context again only costs the frames
+     * pushed since the last rendering.
+     * @return The rendered context, as {@link BusinessContextSnapshot#render()} does
+     */
+    public static String getRenderedContext() {
+        return snapshot().render();
+    }
+
+    /**
+     * Replace the whole context by a previously captured snapshot
+     * @param snapshot The new context [not null]
+     * @return The context that was replaced, so that it can be restored later
+     */
+    public static BusinessContextSnapshot restore(BusinessContextSnapshot snapshot) {
+        Objects.requireNonNull(snapshot, "The snapshot must not be null.");
+        BusinessContextHolderStrategy holder = strategy;
+        BusinessContextSnapshot previous = holder.getContext();
+        holder.setContext(snapshot);
+        return previous;
+    }
+
+    /**
+     * Run the given task with the given context, and then restore the previous one
+     * @param snapshot The context to use while running the task [not null]
+     * @param task The task to run
+     */
+    public static void runWith(BusinessContextSnapshot snapshot, Runnable task) {
+        Objects.requireNonNull(snapshot, "The snapshot must not be null.");
+        if (BusinessContextGuard.isLeakDetectionEnabled()) {
+            strategy.runWithContext(snapshot, () -> {
+                try {
+                    task.run();
+                } finally {
+                    BusinessContextGuard.checkLeaks(task, snapshot, strategy.getContext());
+                }
+            });
+        } else {
+            strategy.runWithContext(snapshot, task);
+        }
+    }
+
+    /**
+     * Call the given task with the given context, and then restore the previous one
+     * @param snapshot The context to use while calling the task [not null]
+     * @param task The task to call
+     * @param <V> The task's return type
+     * @return The task's result
+     * @throws Exception Exception thrown by the task
+     */
+    public static <V> V callWith(BusinessContextSnapshot snapshot, Callable<V> task) throws Exception {
+        Objects.requireNonNull(snapshot, "The snapshot must not be null.");
+        if (BusinessContextGuard.isLeakDetectionEnabled()) {
+            return strategy.callWithContext(snapshot, () -> {
+                try {
+                    return task.call();
+                } finally {
+                    BusinessContextGuard.checkLeaks(task, snapshot, strategy.getContext());
+                }
+            });
+        }
+        return strategy.callWithContext(snapshot, task);
     }
 
 }
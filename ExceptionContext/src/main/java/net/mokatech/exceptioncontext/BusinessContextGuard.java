@@ -0,0 +1,149 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Objects;
+
+/**
+ * <p>Keeps the business context stacks of pooled threads bounded, even when frames are leaked (ie. pushed but never
+ * popped, for example when an exception is thrown between a {@code push()} and its {@code try} block).
+ * <ul>
+ *     <li>A maximum depth can be set : deeper stacks are either truncated (only their topmost frames are kept), or
+ *     rejected with an exception ;</li>
+ *     <li>{@link BusinessContext#open(ContextFrame)} returns a {@link BusinessContextScope}, which checks that it pops
+ *     the frame it pushed ;</li>
+ *     <li>Leak detection reports the frames left behind by the tasks run by the {@code concurrent} decorators, and by
+ *     unbalanced scopes.</li>
+ * </ul>
+ * <p>The guard should be configured at startup.
+ */
+public final class BusinessContextGuard {
+
+    /** What to do when a push would exceed the maximum depth */
+    public enum DepthPolicy {
+        /**
+         * Only keep the topmost half of the stack, as the bottom frames are the most likely to have leaked. The number
+         * of dropped frames is kept, so that the balanced code which pushed some of them can still pop them (or close
+         * their scopes) without failing.
+         */
+        TRUNCATE,
+        /** Reject the push with an {@code IllegalStateException} */
+        FAIL_FAST
+    }
+
+    /** Notified of the frames left on the stack by a task or a scope */
+    @FunctionalInterface
+    public interface LeakListener {
+
+        /**
+         * @param owner The task or scope which leaked the frames
+         * @param leakedFrames The leaked frames, the first element being the bottom-most one
+         */
+        void onLeak(Object owner, ContextFrame[] leakedFrames);
+    }
+
+    /** Default listener, printing leaks on the standard error stream */
+    public static final LeakListener PRINTING_LISTENER = (owner, leakedFrames) -> {
+        StringBuilder buffer = new StringBuilder(256);
+        buffer.append("Business context leak : ").append(leakedFrames.length).append(" frame(s) left by ").append(owner);
+        for (ContextFrame frame : leakedFrames) {
+            buffer.append(ContextRenderer.DEFAULT_SEPARATOR);
+            frame.renderTo(buffer);
+        }
+        System.err.println(buffer);
+    };
+
+    static volatile int maxDepth = Integer.MAX_VALUE;
+    private static volatile DepthPolicy depthPolicy = DepthPolicy.TRUNCATE;
+    private static volatile LeakListener leakListener;
+
+    private BusinessContextGuard() {
+    }
+
+    /**
+     * Limit the depth of the business context stacks
+     * @param newMaxDepth The maximum depth, or {@code Integer.MAX_VALUE} for no limit
+     * @param policy What to do when a push would exceed the maximum depth [not null]
+     */
+    public static void setMaxDepth(int newMaxDepth, DepthPolicy policy) {
+        if (newMaxDepth < 1) {
+            throw new IllegalArgumentException("Invalid maximum depth : " + newMaxDepth);
+        }
+        depthPolicy = Objects.requireNonNull(policy, "The policy must not be null.");
+        maxDepth = newMaxDepth;
+    }
+
+    /** @return The maximum depth of the business context stacks */
+    public static int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /** @return What to do when a push would exceed the maximum depth */
+    public static DepthPolicy getDepthPolicy() {
+        return depthPolicy;
+    }
+
+    /**
+     * Report the frames left behind by decorated tasks and unbalanced scopes
+     * @param listener The listener notified of leaks, eg. {@link #PRINTING_LISTENER} [not null]
+     */
+    public static void enableLeakDetection(LeakListener listener) {
+        leakListener = Objects.requireNonNull(listener, "The listener must not be null.");
+    }
+
+    /** Stop reporting leaks */
+    public static void disableLeakDetection() {
+        leakListener = null;
+    }
+
+    /** @return {@code true} if leaks are reported */
+    public static boolean isLeakDetectionEnabled() {
+        return leakListener != null;
+    }
+
+    /**
+     * Check that a task left the context as it found it. Called by the {@code concurrent} decorators when a task ends.
+     * @param task The task
+     * @param expected The context the task was started with
+     * @param actual The context the task ended with
+     */
+    public static void checkLeaks(Object task, BusinessContextSnapshot expected, BusinessContextSnapshot actual) {
+        LeakListener listener = leakListener;
+        if (listener != null && actual != expected) {
+            reportLeak(listener, task, expected, actual);
+        }
+    }
+
+    /** Report the frames pushed on top of {@code base} */
+    static void reportLeak(Object owner, BusinessContextSnapshot base, BusinessContextSnapshot actual) {
+        LeakListener listener = leakListener;
+        if (listener != null) {
+            reportLeak(listener, owner, base, actual);
+        }
+    }
+
+    private static void reportLeak(LeakListener listener, Object owner, BusinessContextSnapshot base, BusinessContextSnapshot actual) {
+        // Usually, the leaked frames were pushed on top of the expected context
+        int leaked = actual.depth() - base.depth();
+        ContextFrame[] frames = actual.toArray();
+        if (leaked <= 0) {
+            // The task replaced the context, or popped more than it pushed
+            leaked = frames.length;
+        }
+        ContextFrame[] leakedFrames = new ContextFrame[leaked];
+        System.arraycopy(frames, frames.length - leaked, leakedFrames, 0, leaked);
+        try {
+            listener.onLeak(owner, leakedFrames);
+        } catch (RuntimeException e) {
+            // A failing listener must not break the application
+        }
+    }
+
+    /** Apply the depth policy to a stack exceeding the maximum depth */
+    static BusinessContextSnapshot limitDepth(BusinessContextSnapshot snapshot, int limit) {
+        if (depthPolicy == DepthPolicy.FAIL_FAST) {
+            throw new IllegalStateException("The business context exceeds its maximum depth (" + limit
+                    + ") : some frames were probably not popped.");
+        }
+        return snapshot.truncate(Math.max(limit / 2, 1));
+    }
+
+}
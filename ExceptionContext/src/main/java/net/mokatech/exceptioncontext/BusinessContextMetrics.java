@@ -0,0 +1,338 @@
+package net.mokatech.exceptioncontext;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Optional metrics describing the activity of the library : frames pushed and popped, depth of the stacks,
+ * {@link BusinessException}s created (per class and per topmost frame), time spent capturing and rendering their
+ * contexts, and tasks submitted to the {@code concurrent} decorators.
+ * <p>Metrics are exposed through this class' static methods and, once {@link #registerMBean()} has been called, as a
+ * JMX MXBean named {@value #OBJECT_NAME}. All counters are striped {@code LongAdder}s, so that recording them does not
+ * add any contention between threads. When disabled (the default), recording a metric costs a single volatile read.
+ * <p>Counts are cumulated since startup or since the last {@link #reset()} : rates are left to the monitoring tools.
+ */
+public final class BusinessContextMetrics {
+
+    /** Name of the registered MXBean */
+    public static final String OBJECT_NAME = "net.mokatech.exceptioncontext:type=BusinessContextMetrics";
+    /** Stacks deeper than this are counted in the last bucket of the depth histogram */
+    public static final int MAX_HISTOGRAM_DEPTH = 32;
+
+    /** Key used for the exceptions created with an empty context */
+    private static final String EMPTY_CONTEXT_KEY = "<empty>";
+
+    static volatile boolean enabled;
+
+    private static final LongAdder PUSH_COUNT = new LongAdder();
+    private static final LongAdder POP_COUNT = new LongAdder();
+    private static final LongAdder[] DEPTHS = new LongAdder[MAX_HISTOGRAM_DEPTH + 1];
+    private static final AtomicInteger MAX_DEPTH = new AtomicInteger();
+    private static final ConcurrentMap<Class<?>, LongAdder> EXCEPTIONS_BY_CLASS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> EXCEPTIONS_BY_TOP_FRAME = new ConcurrentHashMap<>();
+    private static final LongAdder CAPTURE_COUNT = new LongAdder();
+    private static final LongAdder CAPTURE_NANOS = new LongAdder();
+    private static final LongAdder RENDER_COUNT = new LongAdder();
+    private static final LongAdder RENDER_NANOS = new LongAdder();
+    private static final LongAdder DECORATED_TASKS = new LongAdder();
+    private static final LongAdder UNDECORATED_TASKS = new LongAdder();
+
+    static {
+        for (int i = 0; i < DEPTHS.length; i++) {
+            DEPTHS[i] = new LongAdder();
+        }
+    }
+
+    private BusinessContextMetrics() {
+    }
+
+    /** Start recording metrics */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /** Stop recording metrics ; the metrics recorded so far are kept */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /** @return {@code true} if metrics are being recorded */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Reset all the metrics */
+    public static void reset() {
+        PUSH_COUNT.reset();
+        POP_COUNT.reset();
+        for (LongAdder depth : DEPTHS) {
+            depth.reset();
+        }
+        MAX_DEPTH.set(0);
+        EXCEPTIONS_BY_CLASS.clear();
+        EXCEPTIONS_BY_TOP_FRAME.clear();
+        CAPTURE_COUNT.reset();
+        CAPTURE_NANOS.reset();
+        RENDER_COUNT.reset();
+        RENDER_NANOS.reset();
+        DECORATED_TASKS.reset();
+        UNDECORATED_TASKS.reset();
+    }
+
+    /**
+     * Register the metrics as an MXBean in the platform MBean server
+     * @throws IllegalStateException if the registration fails
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), objectName());
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register the business context metrics.", e);
+        }
+    }
+
+    /** Unregister the metrics MXBean, if it was registered */
+    public static synchronized void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+        } catch (InstanceNotFoundException e) {
+            // Not registered
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to unregister the business context metrics.", e);
+        }
+    }
+
+    private static ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName(OBJECT_NAME);
+    }
+
+    /** @return The number of frames pushed */
+    public static long getPushCount() {
+        return PUSH_COUNT.sum();
+    }
+
+    /** @return The number of frames popped */
+    public static long getPopCount() {
+        return POP_COUNT.sum();
+    }
+
+    /** @return The maximum depth reached by a stack */
+    public static int getMaxDepth() {
+        return MAX_DEPTH.get();
+    }
+
+    /**
+     * Get the depth of the stacks, as measured each time a frame is pushed
+     * @return The number of pushes per resulting depth, the last element counting all the depths from
+     * {@value #MAX_HISTOGRAM_DEPTH}
+     */
+    public static long[] getDepthHistogram() {
+        long[] histogram = new long[DEPTHS.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = DEPTHS[i].sum();
+        }
+        return histogram;
+    }
+
+    /** @return The number of {@link BusinessException}s created */
+    public static long getExceptionCount() {
+        return CAPTURE_COUNT.sum();
+    }
+
+    /** @return The number of {@link BusinessException}s created, per class name */
+    public static Map<String, Long> getExceptionCountsByClass() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<Class<?>, LongAdder> entry : EXCEPTIONS_BY_CLASS.entrySet()) {
+            counts.put(entry.getKey().getName(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Get the number of {@link BusinessException}s created, per topmost frame of their captured context
+     * @return The counts, per key of the topmost frame
+     */
+    public static Map<String, Long> getExceptionCountsByTopFrame() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : EXCEPTIONS_BY_TOP_FRAME.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /** @return The mean time spent capturing the context of a {@link BusinessException}, in nanoseconds */
+    public static long getMeanCaptureNanos() {
+        return mean(CAPTURE_NANOS, CAPTURE_COUNT);
+    }
+
+    /** @return The number of contexts rendered by {@link ContextRenderer}s */
+    public static long getRenderCount() {
+        return RENDER_COUNT.sum();
+    }
+
+    /** @return The mean time spent rendering a context, in nanoseconds */
+    public static long getMeanRenderNanos() {
+        return mean(RENDER_NANOS, RENDER_COUNT);
+    }
+
+    /** @return The number of tasks wrapped by the {@code concurrent} executor decorators */
+    public static long getDecoratedTaskCount() {
+        return DECORATED_TASKS.sum();
+    }
+
+    /** @return The number of tasks submitted to the {@code concurrent} executor decorators without being wrapped */
+    public static long getUndecoratedTaskCount() {
+        return UNDECORATED_TASKS.sum();
+    }
+
+    /**
+     * Record tasks submitted to an executor decorator. Called by the {@code concurrent} decorators.
+     * @param count The number of tasks
+     * @param decorated Whether the tasks were wrapped with the business context
+     */
+    public static void recordTasks(int count, boolean decorated) {
+        if (enabled) {
+            (decorated ? DECORATED_TASKS : UNDECORATED_TASKS).add(count);
+        }
+    }
+
+    static void recordPush(int depth) {
+        PUSH_COUNT.increment();
+        DEPTHS[Math.min(depth, MAX_HISTOGRAM_DEPTH)].increment();
+        int maxDepth;
+        while (depth > (maxDepth = MAX_DEPTH.get()) && !MAX_DEPTH.compareAndSet(maxDepth, depth)) {
+            // Retry
+        }
+    }
+
+    static void recordPop() {
+        POP_COUNT.increment();
+    }
+
+    /** Capture the context of a new exception, measuring how long it takes */
+    static BusinessContextSnapshot capture(Class<?> exceptionClass, CapturePolicy policy) {
+        long start = System.nanoTime();
+        BusinessContextSnapshot context = policy.capture();
+        CAPTURE_NANOS.add(System.nanoTime() - start);
+        CAPTURE_COUNT.increment();
+        counter(EXCEPTIONS_BY_CLASS, exceptionClass).increment();
+        ContextFrame top = context.peek();
+        String key = top == null ? EMPTY_CONTEXT_KEY : top.getKey() != null ? top.getKey() : BusinessContextProfiler.UNNAMED_KEY;
+        counter(EXCEPTIONS_BY_TOP_FRAME, key).increment();
+        return context;
+    }
+
+    static void recordRender(long nanos) {
+        RENDER_NANOS.add(nanos);
+        RENDER_COUNT.increment();
+    }
+
+    private static <K> LongAdder counter(ConcurrentMap<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            LongAdder newCounter = new LongAdder();
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    private static long mean(LongAdder total, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / n;
+    }
+
+    /** MXBean delegating to the static methods */
+    private static final class MXBean implements BusinessContextMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return BusinessContextMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            BusinessContextMetrics.enabled = enabled;
+        }
+
+        @Override
+        public long getPushCount() {
+            return BusinessContextMetrics.getPushCount();
+        }
+
+        @Override
+        public long getPopCount() {
+            return BusinessContextMetrics.getPopCount();
+        }
+
+        @Override
+        public int getMaxDepth() {
+            return BusinessContextMetrics.getMaxDepth();
+        }
+
+        @Override
+        public long[] getDepthHistogram() {
+            return BusinessContextMetrics.getDepthHistogram();
+        }
+
+        @Override
+        public long getExceptionCount() {
+            return BusinessContextMetrics.getExceptionCount();
+        }
+
+        @Override
+        public Map<String, Long> getExceptionCountsByClass() {
+            return BusinessContextMetrics.getExceptionCountsByClass();
+        }
+
+        @Override
+        public Map<String, Long> getExceptionCountsByTopFrame() {
+            return BusinessContextMetrics.getExceptionCountsByTopFrame();
+        }
+
+        @Override
+        public long getMeanCaptureNanos() {
+            return BusinessContextMetrics.getMeanCaptureNanos();
+        }
+
+        @Override
+        public long getRenderCount() {
+            return BusinessContextMetrics.getRenderCount();
+        }
+
+        @Override
+        public long getMeanRenderNanos() {
+            return BusinessContextMetrics.getMeanRenderNanos();
+        }
+
+        @Override
+        public long getDecoratedTaskCount() {
+            return BusinessContextMetrics.getDecoratedTaskCount();
+        }
+
+        @Override
+        public long getUndecoratedTaskCount() {
+            return BusinessContextMetrics.getUndecoratedTaskCount();
+        }
+
+        @Override
+        public void reset() {
+            BusinessContextMetrics.reset();
+        }
+    }
+
+}
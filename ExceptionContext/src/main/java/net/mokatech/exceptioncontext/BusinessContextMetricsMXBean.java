@@ -0,0 +1,41 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link BusinessContextMetrics}, as registered by
+ * {@link BusinessContextMetrics#registerMBean()}.
+ */
+public interface BusinessContextMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getPushCount();
+
+    long getPopCount();
+
+    int getMaxDepth();
+
+    long[] getDepthHistogram();
+
+    long getExceptionCount();
+
+    Map<String, Long> getExceptionCountsByClass();
+
+    Map<String, Long> getExceptionCountsByTopFrame();
+
+    long getMeanCaptureNanos();
+
+    long getRenderCount();
+
+    long getMeanRenderNanos();
+
+    long getDecoratedTaskCount();
+
+    long getUndecoratedTaskCount();
+
+    void reset();
+
+}
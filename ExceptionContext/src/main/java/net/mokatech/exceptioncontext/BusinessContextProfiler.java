@@ -0,0 +1,164 @@
+package net.mokatech.exceptioncontext;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Optional profiler measuring how long each business step lasts, from the push of its frame to its pop.
+ * <p>When enabled, {@link BusinessContext#push(ContextFrame)} records the time at which each frame is pushed, and
+ * {@link BusinessContext#pop()} adds the elapsed time to a lock-free histogram. Steps are identified by their full
+ * context path, ie. the keys of all the frames of the stack, from the bottom to the top : the key of a frame is its
+ * template's pattern, or the key supplied to {@link BusinessContext#push(String, java.util.function.Supplier)} for
+ * legacy frames ({@value #UNNAMED_KEY} if none was supplied). Paths are interned in a tree, so that pushing a frame
+ * only costs a {@code System.nanoTime()} call and a map lookup, and popping it a few atomic increments.
+ * <p>When disabled (the default), pushing and popping frames costs a single volatile read. Contexts restored with
+ * {@link BusinessContext#restore(BusinessContextSnapshot)} (eg. by the {@code concurrent} decorators) keep their
+ * path, but are not measured themselves.
+ */
+public final class BusinessContextProfiler {
+
+    /** Key of the legacy frames pushed without a key */
+    public static final String UNNAMED_KEY = "<unnamed>";
+
+    static volatile boolean enabled;
+
+    private static final Step ROOT = new Step(null, null);
+
+    private BusinessContextProfiler() {
+    }
+
+    /** Start profiling the frames pushed from now on */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /** Stop profiling ; the statistics collected so far are kept */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /** @return {@code true} if the profiler is enabled */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Reset the statistics collected so far */
+    public static void reset() {
+        List<Step> steps = new ArrayList<>();
+        ROOT.collect(steps);
+        for (Step step : steps) {
+            step.histogram.reset();
+        }
+    }
+
+    /**
+     * Export the statistics collected so far
+     * @return The statistics of each step measured at least once, sorted by path
+     */
+    public static List<StepStatistics> getStatistics() {
+        List<Step> steps = new ArrayList<>();
+        ROOT.collect(steps);
+        List<StepStatistics> statistics = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            LatencyHistogram histogram = step.histogram;
+            if (histogram.getCount() > 0) {
+                statistics.add(new StepStatistics(step.path(), histogram.getCount(), histogram.getTotal(),
+                        histogram.getPercentile(0.5), histogram.getPercentile(0.99), histogram.getMax()));
+            }
+        }
+        Collections.sort(statistics);
+        return statistics;
+    }
+
+    /**
+     * Print the statistics collected so far, one step per line
+     * @param printer The target
+     */
+    public static void printStatistics(PrintStream printer) {
+        StringBuilder buffer = new StringBuilder(1024);
+        for (StepStatistics statistics : getStatistics()) {
+            buffer.append(statistics).append(System.lineSeparator());
+        }
+        printer.append(buffer);
+    }
+
+    /**
+     * Compute how long each frame of the given snapshot had been on the stack at the given time
+     * @param snapshot The snapshot [not null]
+     * @param nanoTime The time, as returned by {@code System.nanoTime()}
+     * @return The durations in nanoseconds, the first element being the bottom of the stack ; -1 for the frames that
+     * were pushed while the profiler was disabled
+     */
+    public static long[] getElapsedNanos(BusinessContextSnapshot snapshot, long nanoTime) {
+        Objects.requireNonNull(snapshot, "The snapshot must not be null.");
+        long[] durations = new long[snapshot.depth()];
+        BusinessContextSnapshot node = snapshot;
+        for (int i = durations.length - 1; i >= 0; i--) {
+            durations[i] = node.isProfiled() ? nanoTime - ((BusinessContextSnapshot.Profiled) node).startNanos : -1;
+            node = node.pop();
+        }
+        return durations;
+    }
+
+    static BusinessContextSnapshot push(BusinessContextSnapshot current, ContextFrame frame) {
+        Objects.requireNonNull(frame, "The frame must not be null.");
+        Step parent = current.isProfiled() ? ((BusinessContextSnapshot.Profiled) current).step : ROOT;
+        String key = frame.getKey();
+        return current.pushProfiled(frame, parent.child(key != null ? key : UNNAMED_KEY), System.nanoTime());
+    }
+
+    static void pop(BusinessContextSnapshot current) {
+        if (enabled) {
+            BusinessContextSnapshot.Profiled node = (BusinessContextSnapshot.Profiled) current;
+            node.step.histogram.record(System.nanoTime() - node.startNanos);
+        }
+    }
+
+    /** Node of the tree of context paths */
+    static final class Step {
+
+        private final Step parent;
+        private final String key;
+        private final ConcurrentMap<String, Step> children = new ConcurrentHashMap<>();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Step(Step parent, String key) {
+            this.parent = parent;
+            this.key = key;
+        }
+
+        Step child(String childKey) {
+            Step child = children.get(childKey);
+            if (child == null) {
+                Step newChild = new Step(this, childKey);
+                child = children.putIfAbsent(childKey, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            return child;
+        }
+
+        private List<String> path() {
+            List<String> path = new ArrayList<>();
+            for (Step step = this; step.parent != null; step = step.parent) {
+                path.add(step.key);
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        private void collect(List<Step> steps) {
+            for (Step child : children.values()) {
+                steps.add(child);
+                child.collect(steps);
+            }
+        }
+    }
+
+}
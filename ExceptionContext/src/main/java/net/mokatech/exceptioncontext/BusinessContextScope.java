@@ -0,0 +1,56 @@
+package net.mokatech.exceptioncontext;
+
+/**
+ * <p>Frame pushed by {@link BusinessContext#open(ContextFrame)}, and popped when the scope is closed, typically by a
+ * {@code try}-with-resources statement :
+ * <pre>
+ * try (BusinessContextScope scope = BusinessContext.open(ORDER.frame(orderId))) {
+ *     ...
+ * }
+ * </pre>
+ * <p>Closing the scope checks that its frame is still on top of the stack, as pushed by this scope : the same frame
+ * pushed again by another scope does not match. If other frames were left on top of it,
+ * they are popped as well and reported to the {@link BusinessContextGuard}'s leak listener. If its frame was dropped by
+ * the guard's truncation, the frames left above the truncation are popped instead. If its frame is not on the stack
+ * anymore for any other reason, an {@code IllegalStateException} is thrown. Closing a scope twice has no effect.
+ * <p>Scopes must be closed by the thread which opened them.
+ */
+public final class BusinessContextScope implements AutoCloseable {
+
+    /** The stack holding this scope's frame on top, as it was pushed */
+    private final BusinessContextSnapshot node;
+    private boolean closed;
+
+    BusinessContextScope(BusinessContextSnapshot node) {
+        this.node = node;
+    }
+
+    /** @return The frame pushed by this scope */
+    public ContextFrame getFrame() {
+        return node.peek();
+    }
+
+    /** @return The stack holding this scope's frame on top, as it was pushed */
+    BusinessContextSnapshot getNode() {
+        return node;
+    }
+
+    /**
+     * Pop this scope's frame, and the frames leaked on top of it
+     * @throws IllegalStateException if this scope's frame is not on the stack anymore
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        BusinessContext.close(this);
+    }
+
+    @Override
+    public String toString() {
+        return "scope " + node.peek();
+    }
+
+}
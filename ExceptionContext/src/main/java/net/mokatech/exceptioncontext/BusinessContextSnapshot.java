@@ -0,0 +1,395 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <p>Immutable business context stack, implemented as a persistent linked list.
+ * <p>Each snapshot only holds its topmost element and a pointer to the snapshot beneath it, so that pushing shares
+ * the whole existing stack, popping simply returns the parent, and capturing the current context is a single
+ * pointer read. Snapshots can therefore be freely shared between threads and exceptions.
+ * <p>When the {@link BusinessContextProfiler} is enabled, the nodes pushed by {@link BusinessContext} also hold the time
+ * at which their frame was pushed.
+ */
+public class BusinessContextSnapshot {
+
+    /** Separator between the frames of {@link #render()} */
+    public static final String RENDERED_FRAME_SEPARATOR = " / ";
+
+    /** The empty context */
+    public static final BusinessContextSnapshot EMPTY = new BusinessContextSnapshot(null, null, 0);
+
+    private final BusinessContextSnapshot parent;
+    private final ContextFrame element;
+    private final int depth;
+    /** Whether this node or one beneath it holds a mutable frame, so that only such stacks are walked by freeze() */
+    private final boolean mutable;
+    /** The rendered frames, from the bottom of the stack to this one, once rendered */
+    private String rendered;
+
+    private BusinessContextSnapshot(BusinessContextSnapshot parent, ContextFrame element, int depth) {
+        this.parent = parent;
+        this.element = element;
+        this.depth = depth;
+        this.mutable = element != null && (element.isMutable() || parent.mutable);
+    }
+
+    /**
+     * Build a snapshot from a list of contexts, the first element being the bottom of the stack
+     * @param contexts The contexts [not null]
+     * @return The corresponding snapshot
+     */
+    public static BusinessContextSnapshot of(List<Supplier<String>> contexts) {
+        Objects.requireNonNull(contexts, "The contexts must not be null.");
+        BusinessContextSnapshot snapshot = EMPTY;
+        for (Supplier<String> context : contexts) {
+            snapshot = snapshot.push(context);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Create a new snapshot with the given context on top of this one
+     * @param context The context to push, as a legacy frame
+     * @return The new snapshot
+     */
+    public BusinessContextSnapshot push(Supplier<String> context) {
+        return push(ContextFrame.of(context));
+    }
+
+    /**
+     * Create a new snapshot with the given frame on top of this one
+     * @param frame The frame to push [not null]
+     * @return The new snapshot
+     */
+    public BusinessContextSnapshot push(ContextFrame frame) {
+        Objects.requireNonNull(frame, "The frame must not be null.");
+        return new BusinessContextSnapshot(this, frame, depth + 1);
+    }
+
+    /** Push a node recording the time at which the given frame was pushed */
+    BusinessContextSnapshot pushProfiled(ContextFrame frame, BusinessContextProfiler.Step step, long startNanos) {
+        return new Profiled(this, frame, depth + 1, step, startNanos);
+    }
+
+    /** @return A copy of this node, on top of the given parent */
+    BusinessContextSnapshot copyOnto(BusinessContextSnapshot newParent) {
+        return copyOnto(newParent, element);
+    }
+
+    /** @return A copy of this node holding the given frame, on top of the given parent */
+    BusinessContextSnapshot copyOnto(BusinessContextSnapshot newParent, ContextFrame frame) {
+        return new BusinessContextSnapshot(newParent, frame, newParent.depth + 1);
+    }
+
+    /**
+     * Freeze the mutable frames (ie. {@link CursorFrame}s) of this snapshot
+     * @return This snapshot if it holds no mutable frame, or a copy holding immutable copies of them
+     */
+    BusinessContextSnapshot freeze() {
+        if (!mutable) {
+            return this;
+        }
+        BusinessContextSnapshot lowestMutable = null;
+        for (BusinessContextSnapshot node = this; node.mutable; node = node.parent) {
+            if (node.element.isMutable()) {
+                lowestMutable = node;
+            }
+        }
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[depth - lowestMutable.depth + 1];
+        BusinessContextSnapshot node = this;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = node;
+            node = node.parent;
+        }
+        BusinessContextSnapshot snapshot = lowestMutable.parent;
+        for (BusinessContextSnapshot copied : nodes) {
+            snapshot = copied.copyOnto(snapshot, copied.element.freeze());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Resolve the frames of this snapshot into immutable copies, which no longer reference the objects they were built
+     * from (see {@link CapturePolicy.Mode#EAGER})
+     * @return This snapshot if its frames are already immutable, or a copy holding their resolved copies
+     */
+    BusinessContextSnapshot resolve() {
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[depth];
+        ContextFrame[] frames = new ContextFrame[depth];
+        int lowestResolved = depth;
+        BusinessContextSnapshot node = this;
+        for (int i = depth - 1; i >= 0; i--) {
+            nodes[i] = node;
+            frames[i] = node.element.resolved();
+            if (frames[i] != node.element) {
+                lowestResolved = i;
+            }
+            node = node.parent;
+        }
+        if (lowestResolved == depth) {
+            return this;
+        }
+        BusinessContextSnapshot snapshot = nodes[lowestResolved].parent;
+        for (int i = lowestResolved; i < depth; i++) {
+            snapshot = nodes[i].copyOnto(snapshot, frames[i]);
+        }
+        return snapshot;
+    }
+
+    /** @return The snapshot beneath this one (or this one) holding the given number of frames */
+    BusinessContextSnapshot ancestor(int depth) {
+        BusinessContextSnapshot node = this;
+        while (node.depth > depth) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+    /** @return The number of bottom frames whose nodes this snapshot shares with the given one */
+    int sharedDepth(BusinessContextSnapshot other) {
+        int commonDepth = Math.min(depth, other.depth);
+        BusinessContextSnapshot node = ancestor(commonDepth);
+        BusinessContextSnapshot otherNode = other.ancestor(commonDepth);
+        // Distinct bottoms (ie. truncated stacks) share nothing
+        while (node != otherNode && node.parent != null) {
+            node = node.parent;
+            otherNode = otherNode.parent;
+        }
+        return node.depth;
+    }
+
+    /**
+     * Share the bottom frames this snapshot has in common with the given one, when they are held by distinct nodes
+     * (eg. after frozen cursors, or truncated captures)
+     * @return This snapshot if its common frames are already shared, or a copy built on top of the given snapshot's
+     * nodes
+     */
+    BusinessContextSnapshot shareWith(BusinessContextSnapshot other) {
+        int commonDepth = Math.min(depth, other.depth);
+        BusinessContextSnapshot node = ancestor(commonDepth);
+        BusinessContextSnapshot otherNode = other.ancestor(commonDepth);
+        while (node != otherNode && node.parent != null) {
+            if (node.element != otherNode.element) {
+                commonDepth = node.depth - 1;
+            }
+            node = node.parent;
+            otherNode = otherNode.parent;
+        }
+        if (commonDepth == node.depth) {
+            return this;
+        }
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[depth - commonDepth];
+        node = this;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = node;
+            node = node.parent;
+        }
+        BusinessContextSnapshot snapshot = other.ancestor(commonDepth);
+        for (BusinessContextSnapshot copied : nodes) {
+            snapshot = copied.copyOnto(snapshot);
+        }
+        return snapshot;
+    }
+
+    /** @return {@code true} if this node records the time at which its frame was pushed */
+    final boolean isProfiled() {
+        return this instanceof Profiled;
+    }
+
+    /**
+     * Get the snapshot beneath the topmost context
+     * @return The parent snapshot
+     * @throws IllegalStateException if this snapshot is empty
+     */
+    public BusinessContextSnapshot pop() {
+        if (parent == null) {
+            throw new IllegalStateException("The business context is empty.");
+        }
+        return parent;
+    }
+
+    /**
+     * Keep only the topmost frames of this snapshot, so that the frames beneath them can be garbage-collected
+     * @param maxFrames The number of frames to keep
+     * @return This snapshot if it is not deeper than {@code maxFrames}, or a copy of its topmost frames
+     */
+    public BusinessContextSnapshot top(int maxFrames) {
+        return depth <= maxFrames ? this : copyTop(maxFrames, EMPTY);
+    }
+
+    /**
+     * Keep only the topmost frames of this snapshot, on top of an empty base counting the dropped frames, so that
+     * popping them later (eg. when balanced code unwinds) is tolerated instead of failing
+     * @param maxFrames The number of frames to keep
+     * @return This snapshot if it is not deeper than {@code maxFrames}, or a copy of its topmost frames
+     */
+    BusinessContextSnapshot truncate(int maxFrames) {
+        if (depth <= maxFrames) {
+            return this;
+        }
+        BusinessContextSnapshot bottom = ancestor(0);
+        int dropped = (bottom instanceof Truncated ? ((Truncated) bottom).dropped : 0) + depth - maxFrames;
+        return copyTop(maxFrames, new Truncated(dropped));
+    }
+
+    /** @return {@code true} if this snapshot lies on top of frames dropped by {@link #truncate(int)} */
+    final boolean isTruncated() {
+        return ancestor(0) instanceof Truncated;
+    }
+
+    /** @return The number of frames pushed to build this snapshot, including those dropped by {@link #truncate(int)} */
+    final int pushedDepth() {
+        BusinessContextSnapshot bottom = ancestor(0);
+        return depth + (bottom instanceof Truncated ? ((Truncated) bottom).dropped : 0);
+    }
+
+    /** @return A copy of the given number of topmost frames, on top of the given base */
+    private BusinessContextSnapshot copyTop(int maxFrames, BusinessContextSnapshot base) {
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[maxFrames];
+        BusinessContextSnapshot snapshot = this;
+        for (int i = maxFrames - 1; i >= 0; i--) {
+            nodes[i] = snapshot;
+            snapshot = snapshot.parent;
+        }
+        snapshot = base;
+        for (BusinessContextSnapshot node : nodes) {
+            snapshot = node.copyOnto(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the topmost frame
+     * @return The topmost frame, or {@code null} if this snapshot is empty
+     */
+    public ContextFrame peek() {
+        return element;
+    }
+
+    /** @return The number of contexts in this snapshot */
+    public int depth() {
+        return depth;
+    }
+
+    /** @return {@code true} if this snapshot holds no context */
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    /**
+     * Render the frames on a single line, from the bottom of the stack to the top, separated by
+     * {@link #RENDERED_FRAME_SEPARATOR} (eg. {@code "Processing batch 12 / Tenant ACME / Account 42"}).
+     * <p>Each snapshot caches its rendering, and renders it on top of the closest cached rendering beneath it, so that
+     * rendering a context again only costs the frames pushed since its last rendering.
+     * @return The rendered frames, or an empty string if this snapshot is empty
+     */
+    public String render() {
+        String text = rendered;
+        if (text != null) {
+            return text;
+        }
+        if (parent == null) {
+            return "";
+        }
+        int count = 0;
+        BusinessContextSnapshot base = this;
+        while (base.parent != null && base.rendered == null) {
+            base = base.parent;
+            count++;
+        }
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[count];
+        BusinessContextSnapshot node = this;
+        for (int i = count - 1; i >= 0; i--) {
+            nodes[i] = node;
+            node = node.parent;
+        }
+        StringBuilder buffer;
+        if (base.parent == null) {
+            buffer = new StringBuilder(32 * count);
+        } else {
+            buffer = new StringBuilder(base.rendered.length() + 32 * count).append(base.rendered);
+        }
+        boolean cacheable = true;
+        for (BusinessContextSnapshot rendering : nodes) {
+            if (rendering.depth > 1) {
+                buffer.append(RENDERED_FRAME_SEPARATOR);
+            }
+            rendering.element.renderTo(buffer);
+            text = buffer.toString();
+            // The renderings above a mutable frame must not be cached either
+            cacheable &= !rendering.element.isMutable();
+            if (cacheable) {
+                // Racy but safe, as strings are immutable
+                rendering.rendered = text;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Copy the frames into a new array
+     * @return The frames, the first element being the bottom of the stack
+     */
+    public ContextFrame[] toArray() {
+        ContextFrame[] contexts = new ContextFrame[depth];
+        BusinessContextSnapshot snapshot = this;
+        for (int i = depth - 1; i >= 0; i--) {
+            contexts[i] = snapshot.element;
+            snapshot = snapshot.parent;
+        }
+        return contexts;
+    }
+
+    /**
+     * Copy the contexts into a new mutable list
+     * @return The contexts, the first element being the bottom of the stack
+     */
+    public List<Supplier<String>> toList() {
+        List<Supplier<String>> contexts = new ArrayList<>(depth);
+        Collections.addAll(contexts, toArray());
+        return contexts;
+    }
+
+    /**
+     * Empty base of a truncated stack, counting the frames dropped beneath it : popping it pops one of them, so that
+     * the code which pushed them can still pop them
+     */
+    private static final class Truncated extends BusinessContextSnapshot {
+
+        private final int dropped;
+
+        Truncated(int dropped) {
+            super(null, null, 0);
+            this.dropped = dropped;
+        }
+
+        @Override
+        public BusinessContextSnapshot pop() {
+            return dropped > 1 ? new Truncated(dropped - 1) : EMPTY;
+        }
+    }
+
+    /** Node recording the time at which its frame was pushed, and the profiled step it belongs to */
+    static final class Profiled extends BusinessContextSnapshot {
+
+        final BusinessContextProfiler.Step step;
+        final long startNanos;
+
+        Profiled(BusinessContextSnapshot parent, ContextFrame element, int depth, BusinessContextProfiler.Step step,
+                 long startNanos) {
+            super(parent, element, depth);
+            this.step = step;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        BusinessContextSnapshot copyOnto(BusinessContextSnapshot newParent, ContextFrame frame) {
+            return new Profiled(newParent, frame, newParent.depth() + 1, step, startNanos);
+        }
+    }
+
+}
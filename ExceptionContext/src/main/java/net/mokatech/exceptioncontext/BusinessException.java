@@ -1,9 +1,14 @@
 package net.mokatech.exceptioncontext;
 
+import net.mokatech.exceptioncontext.report.AsyncContextReporter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.List;
-import java.util.function.Supplier;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * <p>Base class for business-oriented exceptions.
@@ -13,12 +18,57 @@ import java.util.function.Supplier;
  * the constructors.
  * <p>As an alternative, this exception captures the "business context" exposed by the {@link BusinessContext} a the
  * time it is thrown. The {@code printContext()} methods mirror the {@code printStackTrace()} ones and, together with
- * {@link BusinessException#getContext()}, allow to retrieve and print the business context.
+ * {@link BusinessException#getContext()}, allow to retrieve and print the business context. The
+ * {@code renderContext()} methods and the {@link ContextRenderer} allow to render it into any buffer instead.
+ * <p>During exception storms, the {@link CapturePolicy} registered for the exception's class can limit or suppress the
+ * capture of the context, and decide whether its frames are resolved when the exception is created (so that they
+ * no longer reference the objects they were built from), in the background, or only when the context is rendered.
+ * <p>Exceptions are serialized with a compact form of their context, whose frames are resolved to their messages or
+ * slot values, and whose templates are only sent once per stream. Deserialized contexts are only decoded when
+ * accessed.
+ * <p>When the cause is also a {@code BusinessException}, the context shares the frames it has in common with the
+ * cause's context, so that wrapping exceptions only store the frames they add, in memory as well as in the serialized
+ * form. {@link ContextRenderer#MERGED_CAUSES} renders the whole chain as a single context.
+ * <p>When the {@link BusinessContextProfiler} is enabled, {@link #getStepDurations()} tells how long each step of the
+ * context had been running when the exception was created.
+ * <p>For hot rejection paths, {@link FlyweightBusinessException} provides preallocated instances, which read their
+ * context on demand.
+ * <p>Exceptions created from an {@link ErrorCode} only store the code and their arguments : their message is formatted
+ * from the code's precompiled pattern when it is first read. They are serialized with the code's id, their message and
+ * the immutable values of their arguments.
  */
 public class BusinessException extends Exception {
 
-    /** The business context captured on exception construction */
-    private final List<Supplier<String>> context = BusinessContext.get();
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The business context captured on exception construction, according to the class' {@link CapturePolicy}, and
+     * sharing its bottom frames with the cause's context ; {@code null} until first accessed on deserialized exceptions
+     * <p>Volatile, as it is replaced by its resolved copy, or by its decoded form, on whichever thread first reads it.
+     */
+    private transient volatile BusinessContextSnapshot context;
+    /** The background resolution of the context, in the {@link CapturePolicy.Mode#HYBRID} mode, until it is read */
+    private transient volatile ContextResolver.Resolution resolution;
+
+    {
+        // Flyweights read their context on demand, and only capture it into their private copies
+        if (this instanceof FlyweightBusinessException) {
+            context = BusinessContextSnapshot.EMPTY;
+        } else {
+            captureContext();
+        }
+    }
+
+    /** The context read from the stream, until it is decoded */
+    private transient SerializedContext serializedContext;
+    /** The error code, if the exception was created from one (and, once deserialized, if it is declared locally) */
+    private transient ErrorCode errorCode;
+    /** The arguments of the error code's message */
+    private transient Object[] arguments;
+    /** The message formatted from the error code, once formatted */
+    private transient String formattedMessage;
+    /** The time of the capture, if the {@link BusinessContextProfiler} is enabled */
+    private final transient long capturedNanos = BusinessContextProfiler.enabled ? System.nanoTime() : Long.MIN_VALUE;
 
     public BusinessException() {
         super(null, null, true, false);
@@ -56,45 +106,212 @@ public class BusinessException extends Exception {
         super(message, cause, enableSuppression, withStackTrace);
     }
 
-    /** Print the business context stack on the standard error stream. */
-    public void printContext() {
-        printContextWithPrintStream(System.err, "\n while ");
+    public BusinessException(ErrorCode errorCode, Object... arguments) {
+        super(null, null, true, false);
+        this.errorCode = Objects.requireNonNull(errorCode, "The error code must not be null.");
+        this.arguments = arguments;
     }
 
-    /** Print the business context stack on the given {@code PrintStream}. */
-    public void printContext(PrintStream printer, CharSequence separator) {
-        printContextWithPrintStream(printer, separator);
+    public BusinessException(ErrorCode errorCode, Throwable cause, Object... arguments) {
+        super(null, cause, true, false);
+        this.errorCode = Objects.requireNonNull(errorCode, "The error code must not be null.");
+        this.arguments = arguments;
     }
 
-    /** Print the business context stack on the given {@code PrintStream}. */
-    private void printContextWithPrintStream(PrintStream printer, CharSequence separator) {
-        synchronized (printer) {
-            printer.print(this);
-            for (Supplier<String> contextElement : context) {
-                printer.append(separator).append(contextElement.get());
+    /**
+     * Get the error code this exception was created from
+     * @return The error code, or {@code null} if there is none, or if a deserialized exception's code is not declared
+     * in this process
+     */
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Get the arguments of the error code's message
+     * @return A copy of the arguments, empty if this exception has no error code
+     */
+    public Object[] getArguments() {
+        return arguments == null ? new Object[0] : arguments.clone();
+    }
+
+    /**
+     * Get the message, formatted from the error code when first read if this exception was created from one
+     * @return The message
+     */
+    @Override
+    public String getMessage() {
+        String message = formattedMessage;
+        if (message == null) {
+            if (errorCode == null) {
+                return super.getMessage();
             }
-            printer.println();
+            // Racy but safe, as strings are immutable : concurrent first readings just format the same message
+            message = errorCode.format(arguments);
+            formattedMessage = message;
         }
+        return message;
+    }
+
+    /** Print the business context stack on the standard error stream. */
+    public void printContext() {
+        ContextRenderer.DEFAULT.print(this, System.err);
+    }
+
+    /** Print the business context stack on the given {@code PrintStream}. */
+    public void printContext(PrintStream printer, CharSequence separator) {
+        new ContextRenderer(separator, Integer.MAX_VALUE).print(this, printer);
     }
 
     /** Print the business context stack on the given {@code PrintWriter}. */
     public void printContext(PrintWriter printer, CharSequence separator) {
-        synchronized (printer) {
-            printer.print(this);
-            for (Supplier<String> contextElement : context) {
-                printer.append(separator).append(contextElement.get());
-            }
-            printer.println();
-        }
+        new ContextRenderer(separator, Integer.MAX_VALUE).print(this, printer);
+    }
+
+    /**
+     * Hand the business context stack over to the given asynchronous reporter, which will print it on its own thread
+     * @param reporter The reporter
+     * @return {@code true} if the exception was accepted, {@code false} if it was dropped
+     */
+    public boolean reportContext(AsyncContextReporter reporter) {
+        return reporter.report(this);
+    }
+
+    /**
+     * Render the business context stack into the given buffer, using the default {@link ContextRenderer}
+     * @param buffer The buffer to append to
+     * @return The buffer
+     */
+    public StringBuilder renderContext(StringBuilder buffer) {
+        return ContextRenderer.DEFAULT.render(this, buffer);
+    }
+
+    /**
+     * Render the business context stack into the given {@code Appendable}, using the default {@link ContextRenderer}
+     * @param out The target
+     * @param <A> The target's type
+     * @return The target
+     * @throws IOException if the target throws one
+     */
+    public <A extends Appendable> A renderContext(A out) throws IOException {
+        return ContextRenderer.DEFAULT.render(this, out);
     }
 
     /**
      * Get the captured business context
-     * @return The business context
+     * @return The business context frames, the first element being the bottom of the stack
      */
-    @SuppressWarnings("unchecked")
-    public Supplier<String>[] getContext() {
-        return context.toArray(new Supplier[0]);
+    public ContextFrame[] getContext() {
+        return getContextSnapshot().toArray();
+    }
+
+    /**
+     * Get the captured business context, without copying it
+     * @return The business context snapshot
+     */
+    public BusinessContextSnapshot getContextSnapshot() {
+        BusinessContextSnapshot snapshot = currentContext();
+        if (snapshot == null) {
+            // Snapshots and frames are immutable, so decoding them twice concurrently is harmless
+            snapshot = serializedContext.decode(causeContext());
+            context = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get how long each step of the captured business context had been running when this exception was created
+     * @return The durations in nanoseconds, the first element being the bottom of the stack ; -1 for the steps that
+     * were not profiled, or for all of them if the profiler was disabled when this exception was created
+     */
+    public long[] getStepDurations() {
+        BusinessContextSnapshot snapshot = getContextSnapshot();
+        if (capturedNanos == Long.MIN_VALUE) {
+            long[] durations = new long[snapshot.depth()];
+            Arrays.fill(durations, -1);
+            return durations;
+        }
+        return BusinessContextProfiler.getElapsedNanos(snapshot, capturedNanos);
+    }
+
+    /** @return The given context, sharing its bottom frames with the cause's context */
+    private BusinessContextSnapshot shareWithCause(BusinessContextSnapshot snapshot) {
+        BusinessContextSnapshot causeContext = snapshot.isEmpty() ? null : causeContext();
+        return causeContext == null ? snapshot : snapshot.shareWith(causeContext);
+    }
+
+    /** @return The context of the cause, if it is a business exception holding its own context */
+    private BusinessContextSnapshot causeContext() {
+        BusinessException cause = contextCause();
+        return cause == null ? null : cause.getContextSnapshot();
+    }
+
+    /** @return The cause, if it is a business exception holding its own context */
+    private BusinessException contextCause() {
+        Throwable cause = getCause();
+        if (!(cause instanceof BusinessException)
+                || cause instanceof FlyweightBusinessException && ((FlyweightBusinessException) cause).isShared()) {
+            return null;
+        }
+        return (BusinessException) cause;
+    }
+
+    /** @return The context, replaced by its resolved copy if the background resolution has completed */
+    private BusinessContextSnapshot currentContext() {
+        ContextResolver.Resolution pending = resolution;
+        if (pending != null) {
+            BusinessContextSnapshot resolved = pending.get();
+            if (resolved != null) {
+                // Racy but safe : concurrent readers store the same resolved copy, before dropping the resolution
+                context = resolved;
+                resolution = null;
+                return resolved;
+            }
+        }
+        return context;
+    }
+
+    /** Capture the current context, according to the class' {@link CapturePolicy} */
+    final void captureContext() {
+        CapturePolicy policy = CapturePolicy.forClass(getClass());
+        BusinessContextSnapshot captured = shareWithCause(BusinessContextMetrics.enabled
+                ? BusinessContextMetrics.capture(getClass(), policy)
+                : policy.capture());
+        context = captured;
+        // Only the snapshot and the (fully constructed) cause are handed over, never this exception
+        resolution = policy.getMode() == CapturePolicy.Mode.HYBRID && !captured.isEmpty()
+                ? ContextResolver.resolveLater(captured, contextCause())
+                : null;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        BusinessContextSnapshot snapshot = currentContext();
+        if (snapshot == null) {
+            serializedContext.writeTo(out);
+        } else {
+            SerializedContext.write(out, snapshot, causeContext());
+        }
+        if (errorCode == null && formattedMessage == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(errorCode == null ? -1 : errorCode.getId());
+            // Not written with writeUTF, which is limited to 64 KB once encoded
+            out.writeObject(getMessage());
+            out.writeObject(ResolvedFrame.immutableValues(arguments));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Field initializers are not run on deserialization : the context stays null until decoded
+        serializedContext = SerializedContext.read(in);
+        int errorCodeId = in.readInt();
+        if (errorCodeId != 0) {
+            errorCode = errorCodeId > 0 ? ErrorCode.forId(errorCodeId) : null;
+            formattedMessage = (String) in.readObject();
+            arguments = (Object[]) in.readObject();
+        }
     }
 
 }
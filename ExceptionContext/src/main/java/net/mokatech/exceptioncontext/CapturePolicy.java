@@ -0,0 +1,284 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Decides whether, and how much of, the business context is captured by {@link BusinessException}s.
+ * <p>During exception storms, capturing the full context of every exception is rarely useful. Policies are checked
+ * before any work is done on the context, so that an exception whose capture is suppressed costs about as much as a
+ * plain stackless exception. Suppressed captures are counted, and those exceptions get an empty context.
+ * <p>A default policy applies to all exceptions, and more specific policies can be registered per exception class
+ * (they also apply to the subclasses). Policies should be configured at startup.
+ * <p>Each policy also has a {@link Mode}, telling when the frames of the captured contexts are resolved into immutable
+ * copies, which release the objects the frames were built from.
+ */
+public abstract class CapturePolicy {
+
+    /** When the frames of the captured contexts are resolved into immutable copies */
+    public enum Mode {
+        /**
+         * Frames are rendered when the context is first rendered, and keep referencing the objects they were built
+         * from until then (default)
+         */
+        DEFERRED,
+        /**
+         * Frames are rendered when the exception is created, and replaced by copies holding their message and the
+         * immutable values of their slots
+         */
+        EAGER,
+        /**
+         * Frames are resolved as with {@link #EAGER}, but by a background thread, shortly after the exception is
+         * created, so that the throwing thread does not pay for rendering them. Until then, the context is the deferred
+         * one. Resolution is skipped (and the context stays deferred) when the background thread lags too far behind.
+         */
+        HYBRID
+    }
+
+    private static volatile CapturePolicy defaultPolicy = always();
+    /** Per-class policies, copied on write */
+    private static volatile Map<Class<?>, CapturePolicy> policies = Collections.emptyMap();
+
+    private final LongAdder suppressedCount = new LongAdder();
+
+    /**
+     * Change the policy applying to all the exceptions that do not have a more specific one
+     * @param policy The new default policy [not null]
+     */
+    public static void setDefault(CapturePolicy policy) {
+        defaultPolicy = Objects.requireNonNull(policy, "The policy must not be null.");
+    }
+
+    /** @return The policy applying to all the exceptions that do not have a more specific one */
+    public static CapturePolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Change the executor resolving the contexts captured in the {@link Mode#HYBRID} mode. By default, they are resolved
+     * by a single daemon thread.
+     * @param executor The executor, or {@code null} to use the default one
+     */
+    public static void setResolutionExecutor(Executor executor) {
+        ContextResolver.setExecutor(executor);
+    }
+
+    /**
+     * Register a policy for the given exception class and its subclasses
+     * @param exceptionClass The exception class [not null]
+     * @param policy The policy, or {@code null} to remove the current one
+     */
+    public static synchronized void register(Class<? extends BusinessException> exceptionClass, CapturePolicy policy) {
+        Objects.requireNonNull(exceptionClass, "The exception class must not be null.");
+        Map<Class<?>, CapturePolicy> newPolicies = new HashMap<>(policies);
+        if (policy == null) {
+            newPolicies.remove(exceptionClass);
+        } else {
+            newPolicies.put(exceptionClass, policy);
+        }
+        policies = newPolicies.isEmpty() ? Collections.emptyMap() : newPolicies;
+    }
+
+    /**
+     * Get the policy applying to the given exception class
+     * @param exceptionClass The exception class
+     * @return The policy registered for the closest superclass, or the default policy
+     */
+    public static CapturePolicy forClass(Class<?> exceptionClass) {
+        Map<Class<?>, CapturePolicy> registered = policies;
+        if (!registered.isEmpty()) {
+            for (Class<?> type = exceptionClass; type != null && type != Exception.class; type = type.getSuperclass()) {
+                CapturePolicy policy = registered.get(type);
+                if (policy != null) {
+                    return policy;
+                }
+            }
+        }
+        return defaultPolicy;
+    }
+
+    /**
+     * Capture the current business context, according to this policy
+     * @return The captured context, or an empty one if the capture is suppressed
+     */
+    public final BusinessContextSnapshot capture() {
+        if (!accept()) {
+            suppressedCount.increment();
+            return BusinessContextSnapshot.EMPTY;
+        }
+        BusinessContextSnapshot snapshot = select(BusinessContext.snapshot());
+        return getMode() == Mode.EAGER ? snapshot.resolve() : snapshot;
+    }
+
+    /** @return When the frames of the contexts captured by this policy are resolved */
+    public Mode getMode() {
+        return Mode.DEFERRED;
+    }
+
+    /**
+     * Get a policy capturing the same contexts as this one, resolving their frames in the given mode
+     * <p>The returned policy counts its own suppressed captures.
+     * @param mode The mode [not null]
+     * @return The new policy
+     */
+    public CapturePolicy withMode(Mode mode) {
+        Objects.requireNonNull(mode, "The mode must not be null.");
+        return new ModeCapturePolicy(this instanceof ModeCapturePolicy ? ((ModeCapturePolicy) this).delegate : this, mode);
+    }
+
+    /** @return The number of captures suppressed by this policy so far */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * Decide whether the context should be captured. Called before any work is done on the context.
+     * @return {@code true} if the context should be captured
+     */
+    protected abstract boolean accept();
+
+    /**
+     * Select the part of the context to keep, once it has been accepted
+     * @param snapshot The current context
+     * @return The context to keep
+     */
+    protected BusinessContextSnapshot select(BusinessContextSnapshot snapshot) {
+        return snapshot;
+    }
+
+    /** @return A policy always capturing the full context (default) */
+    public static CapturePolicy always() {
+        return new CapturePolicy() {
+            @Override
+            protected boolean accept() {
+                return true;
+            }
+        };
+    }
+
+    /** @return A policy never capturing the context */
+    public static CapturePolicy never() {
+        return new CapturePolicy() {
+            @Override
+            protected boolean accept() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param maxFrames The number of frames to keep
+     * @return A policy only capturing the topmost frames of the context
+     */
+    public static CapturePolicy topFrames(int maxFrames) {
+        if (maxFrames < 0) {
+            throw new IllegalArgumentException("The number of frames must not be negative.");
+        }
+        return new CapturePolicy() {
+            @Override
+            protected boolean accept() {
+                return true;
+            }
+
+            @Override
+            protected BusinessContextSnapshot select(BusinessContextSnapshot snapshot) {
+                return snapshot.top(maxFrames);
+            }
+        };
+    }
+
+    /**
+     * @param rate The sampling rate
+     * @return A policy capturing the context of one exception out of {@code rate}, randomly
+     */
+    public static CapturePolicy sampled(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("The sampling rate must be positive.");
+        }
+        return new CapturePolicy() {
+            @Override
+            protected boolean accept() {
+                return ThreadLocalRandom.current().nextInt(rate) == 0;
+            }
+        };
+    }
+
+    /**
+     * @param capturesPerSecond The sustained number of captures per second
+     * @param burst The number of captures that can be made at once, after an idle period
+     * @return A policy capturing the context of at most {@code capturesPerSecond} exceptions per second
+     */
+    public static CapturePolicy rateLimited(double capturesPerSecond, int burst) {
+        if (capturesPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and burst must be positive.");
+        }
+        return new RateLimitedCapturePolicy((long) (TimeUnit.SECONDS.toNanos(1) / capturesPerSecond), burst);
+    }
+
+    /** Policy delegating to another one, with another mode */
+    private static final class ModeCapturePolicy extends CapturePolicy {
+
+        private final CapturePolicy delegate;
+        private final Mode mode;
+
+        ModeCapturePolicy(CapturePolicy delegate, Mode mode) {
+            this.delegate = delegate;
+            this.mode = mode;
+        }
+
+        @Override
+        protected boolean accept() {
+            return delegate.accept();
+        }
+
+        @Override
+        protected BusinessContextSnapshot select(BusinessContextSnapshot snapshot) {
+            return delegate.select(snapshot);
+        }
+
+        @Override
+        public Mode getMode() {
+            return mode;
+        }
+    }
+
+    /**
+     * Lock-free token bucket, implemented as a "generic cell rate algorithm" : instead of counting tokens, it tracks
+     * the theoretical time at which the bucket will be full again.
+     */
+    private static final class RateLimitedCapturePolicy extends CapturePolicy {
+
+        private final long interval;
+        private final long tolerance;
+        private final AtomicLong theoreticalArrivalTime;
+
+        RateLimitedCapturePolicy(long interval, int burst) {
+            this.interval = Math.max(interval, 1);
+            this.tolerance = this.interval * burst;
+            this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+        }
+
+        @Override
+        protected boolean accept() {
+            long now = System.nanoTime();
+            while (true) {
+                long arrivalTime = theoreticalArrivalTime.get();
+                long next = Math.max(arrivalTime - now, 0) + now + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (theoreticalArrivalTime.compareAndSet(arrivalTime, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+}
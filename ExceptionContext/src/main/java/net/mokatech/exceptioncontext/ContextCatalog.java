@@ -0,0 +1,67 @@
+package net.mokatech.exceptioncontext;
+
+import net.mokatech.exceptioncontext.annotation.InBusinessContext;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Startup validation of the error codes and context templates declared by an application.
+ * <p>{@link ErrorCode}s and {@link FrameTemplate}s validate themselves when they are created, ie. when the class
+ * declaring them as constants is initialized. {@code @InBusinessContext} templates, however, are only compiled by the
+ * aspect when their method is first called. Validating the classes declaring them at startup reports all the mistakes
+ * at once, before any of them can break the rendering of a context in production :
+ * <pre>
+ *     ContextCatalog.validate(OrderErrors.class, OrderService.class, PaymentService.class);
+ * </pre>
+ */
+public final class ContextCatalog {
+
+    private ContextCatalog() {
+    }
+
+    /**
+     * Validate the given classes : initialize them, so that the error codes and frame templates they declare as
+     * constants are validated, and check that the {@code @InBusinessContext} templates of their methods are valid,
+     * and only refer to existing parameters
+     * @param classes The classes to validate
+     * @throws IllegalStateException if any declaration is invalid, listing all of them
+     */
+    public static void validate(Class<?>... classes) {
+        List<String> errors = new ArrayList<>();
+        for (Class<?> type : classes) {
+            try {
+                Class.forName(type.getName(), true, type.getClassLoader());
+            } catch (ClassNotFoundException | LinkageError e) {
+                Throwable error = e instanceof ExceptionInInitializerError && e.getCause() != null ? e.getCause() : e;
+                errors.add(type.getName() + " : " + error);
+                continue;
+            }
+            for (Method method : type.getDeclaredMethods()) {
+                InBusinessContext annotation = method.getAnnotation(InBusinessContext.class);
+                if (annotation != null) {
+                    validate(method, annotation.value(), errors);
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            String separator = System.lineSeparator() + " - ";
+            throw new IllegalStateException("Invalid business context declarations :" + separator + String.join(separator, errors));
+        }
+    }
+
+    private static void validate(Method method, String pattern, List<String> errors) {
+        String location = method.getDeclaringClass().getName() + "." + method.getName();
+        try {
+            int argumentCount = MessageTemplate.compile(pattern).getArgumentCount();
+            if (argumentCount > method.getParameterCount()) {
+                errors.add(location + " : the template refers to " + argumentCount + " arguments, but the method only has "
+                        + method.getParameterCount() + " parameters : " + pattern);
+            }
+        } catch (IllegalArgumentException e) {
+            errors.add(location + " : " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <p>An element of the business context stack.
+ * <p>A frame is identified by a key (usually its template's pattern), and may hold a few values ("slots"), which can
+ * be read back without parsing the rendered message. Frames come in three flavours :
+ * <ul>
+ *     <li>{@link StructuredFrame}s, built from a {@link FrameTemplate}, whose slots are stored without boxing ;</li>
+ *     <li>frames bound to a {@link MessageTemplate} and an array of arguments, as pushed by the
+ *     {@code BusinessContextAspect} ;</li>
+ *     <li>legacy frames, wrapping a plain {@code Supplier<String>}, which have no slots, and no key unless one is
+ *     supplied by the caller.</li>
+ * </ul>
+ * <p>All frames are immutable, except {@link CursorFrame}s, which are frozen when the context is captured.
+ * <p>Immutable frames are only rendered once : the rendered message is memoized, so that rendering the same context
+ * again (eg. for each log line) neither calls the suppliers again, nor formats the templates again. Suppliers are
+ * therefore expected to return the same message each time.
+ * <p>Frames still implement {@code Supplier<String>}, so that they can be used wherever the former API is expected.
+ */
+public abstract class ContextFrame implements Supplier<String> {
+
+    /** The rendered frame, once rendered */
+    private String rendered;
+    /** The immutable copy of this frame, once resolved */
+    private ContextFrame resolved;
+
+    ContextFrame() {
+    }
+
+    /**
+     * Wrap the given supplier in a legacy frame
+     * @param context The supplier [not null]
+     * @return The supplier itself if it already is a frame, or a frame wrapping it
+     */
+    public static ContextFrame of(Supplier<String> context) {
+        Objects.requireNonNull(context, "The context must not be null.");
+        if (context instanceof ContextFrame) {
+            return (ContextFrame) context;
+        }
+        return new SupplierFrame(null, context);
+    }
+
+    /**
+     * Wrap the given supplier in a legacy frame identified by the given key, eg. for the {@link BusinessContextProfiler}
+     * @param key The key [not null]
+     * @param context The supplier [not null]
+     * @return A frame wrapping the supplier
+     */
+    public static ContextFrame of(String key, Supplier<String> context) {
+        Objects.requireNonNull(key, "The key must not be null.");
+        Objects.requireNonNull(context, "The context must not be null.");
+        return new SupplierFrame(key, context);
+    }
+
+    /**
+     * Get the key identifying this kind of frame
+     * @return The key, or {@code null} for legacy frames pushed without a key
+     */
+    public abstract String getKey();
+
+    /** @return The number of slots held by this frame */
+    public int getSlotCount() {
+        return 0;
+    }
+
+    /**
+     * Get the value of a slot, boxing it if necessary
+     * @param slot The slot index, ie. the corresponding placeholder's index in the template
+     * @return The slot's value
+     * @throws IndexOutOfBoundsException if there is no such slot
+     */
+    public Object getValue(int slot) {
+        throw new IndexOutOfBoundsException("No slot " + slot + " in frame " + getKey());
+    }
+
+    /**
+     * Get the value of a numeric slot
+     * @param slot The slot index
+     * @return The slot's value
+     * @throws IndexOutOfBoundsException if there is no such slot
+     * @throws ClassCastException if the slot is not numeric
+     */
+    public long getLong(int slot) {
+        return ((Number) getValue(slot)).longValue();
+    }
+
+    /**
+     * Get the value of a numeric slot
+     * @param slot The slot index
+     * @return The slot's value
+     * @throws IndexOutOfBoundsException if there is no such slot
+     * @throws ClassCastException if the slot is not numeric
+     */
+    public int getInt(int slot) {
+        return (int) getLong(slot);
+    }
+
+    /**
+     * Get the value of a slot, as a {@code String}
+     * @param slot The slot index
+     * @return The slot's value
+     * @throws IndexOutOfBoundsException if there is no such slot
+     */
+    public String getString(int slot) {
+        return String.valueOf(getValue(slot));
+    }
+
+    /**
+     * Get the value of an enum slot
+     * @param slot The slot index
+     * @param enumType The enum's class
+     * @param <E> The enum's type
+     * @return The slot's value
+     * @throws IndexOutOfBoundsException if there is no such slot
+     * @throws ClassCastException if the slot does not hold such an enum
+     */
+    public <E extends Enum<E>> E getEnum(int slot, Class<E> enumType) {
+        return enumType.cast(getValue(slot));
+    }
+
+    /** @return {@code true} if this frame may still change after being pushed */
+    boolean isMutable() {
+        return false;
+    }
+
+    /** @return An immutable copy of this frame, or the frame itself if it is already immutable */
+    ContextFrame freeze() {
+        return this;
+    }
+
+    /**
+     * Get an immutable copy of this frame, which no longer references the objects it was built from. The copy is
+     * cached, so that all the exceptions resolving the same frame share it (and can still share their common frames).
+     * @return The copy, or this frame if it does not reference any mutable object
+     */
+    final ContextFrame resolved() {
+        ContextFrame frame = resolved;
+        if (frame == null) {
+            frame = resolve();
+            // Racy but safe, as copies are immutable : concurrent resolutions only yield distinct copies
+            resolved = frame;
+        }
+        return frame;
+    }
+
+    /** @return A new immutable copy of this frame, or this frame if it does not reference any mutable object */
+    ContextFrame resolve() {
+        return this;
+    }
+
+    /** @return The template rendering this frame from its slots, or {@code null} if it cannot be re-rendered so */
+    MessageTemplate messageTemplate() {
+        return null;
+    }
+
+    /**
+     * Render this frame into the given buffer
+     * @param buffer The buffer to append to
+     */
+    public final void renderTo(StringBuilder buffer) {
+        buffer.append(get());
+    }
+
+    /**
+     * Render this frame. Immutable frames are only rendered once, and then return the same string.
+     * @return The rendered frame
+     */
+    @Override
+    public final String get() {
+        String text = rendered;
+        if (text == null) {
+            text = render();
+            if (!isMutable()) {
+                // Racy but safe, as strings are immutable : concurrent first renderings just compute the same string
+                rendered = text;
+            }
+        }
+        return text;
+    }
+
+    /** @return The rendered frame, computed without memoization */
+    String render() {
+        StringBuilder buffer = new StringBuilder(64);
+        format(buffer);
+        return buffer.toString();
+    }
+
+    /** Render this frame into the given buffer, without memoization */
+    abstract void format(StringBuilder buffer);
+
+    @Override
+    public String toString() {
+        return get();
+    }
+
+    /** Legacy frame, wrapping a {@code Supplier<String>} */
+    private static final class SupplierFrame extends ContextFrame {
+
+        private final String key;
+        private final Supplier<String> supplier;
+
+        SupplierFrame(String key, Supplier<String> supplier) {
+            this.key = key;
+            this.supplier = supplier;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        void format(StringBuilder buffer) {
+            buffer.append(supplier.get());
+        }
+
+        @Override
+        String render() {
+            return String.valueOf(supplier.get());
+        }
+
+        @Override
+        ContextFrame resolve() {
+            return new ResolvedFrame(key, get(), null, null);
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package net.mokatech.exceptioncontext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * <p>Encodes business contexts into compact, header-safe strings, so that they can be propagated to other processes
+ * (eg. as an HTTP header or a message property), in the spirit of W3C's {@code traceparent} and {@code baggage}.
+ * <p>The header starts with a version ({@value #VERSION}), followed by the rendered frames from the bottom of the stack
+ * to the top, separated by commas. Frames are percent-encoded (spaces as {@code +}), so that headers only contain
+ * visible ASCII characters. Frames longer than {@code maxFrameLength} characters are truncated, and when the whole
+ * header would exceed {@code maxLength} characters, frames are dropped according to the {@link TruncationPolicy} and
+ * replaced by a single {@code ~} marker.
+ * <p>On the receiving side, the decoded frames are meant to be placed under the local stack, as a remote prefix (see
+ * {@link #join(CharSequence)}). Decoding only splits the header : frames are only percent-decoded when rendered.
+ * Invalid headers are ignored. As headers come from untrusted callers, the control characters (including line breaks)
+ * and unpaired surrogates of the decoded frames are replaced by {@code U+FFFD}, so that they cannot forge log lines.
+ * <p>Codecs are immutable and thread-safe.
+ */
+public final class ContextHeaderCodec {
+
+    /** Suggested name of the header */
+    public static final String HEADER_NAME = "business-context";
+    /** Key of the frames decoded from a header */
+    public static final String REMOTE_KEY = "<remote>";
+    /** Current version of the format */
+    public static final String VERSION = "00";
+
+    /** Default codec, limiting headers to 512 characters and frames to 128 characters */
+    public static final ContextHeaderCodec DEFAULT = new ContextHeaderCodec(512, 128, TruncationPolicy.KEEP_OUTERMOST);
+
+    /** Which frames to keep when the header would exceed its size budget */
+    public enum TruncationPolicy {
+        /** Keep the bottom of the stack (eg. the batch or request being processed), and drop the topmost frames */
+        KEEP_OUTERMOST,
+        /** Keep the top of the stack (ie. the steps closest to the remote call), and drop the bottom frames */
+        KEEP_INNERMOST
+    }
+
+    private static final char SEPARATOR = ',';
+    private static final String TRUNCATED = "~";
+    private static final String ELLIPSIS = "...";
+    /** Headers longer than this are ignored by the decoder */
+    private static final int MAX_DECODED_LENGTH = 8192;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /** Replaces the characters of the decoded frames which are unsafe to log */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final int maxLength;
+    private final int maxFrameLength;
+    private final TruncationPolicy truncationPolicy;
+
+    /**
+     * @param maxLength The maximum length of the encoded headers
+     * @param maxFrameLength The maximum length of each rendered frame, before encoding
+     * @param truncationPolicy Which frames to keep when the header would be too long [not null]
+     */
+    public ContextHeaderCodec(int maxLength, int maxFrameLength, TruncationPolicy truncationPolicy) {
+        if (maxLength < VERSION.length() + 1) {
+            throw new IllegalArgumentException("Invalid maximum length : " + maxLength);
+        }
+        if (maxFrameLength <= ELLIPSIS.length()) {
+            throw new IllegalArgumentException("Invalid maximum frame length : " + maxFrameLength);
+        }
+        this.maxLength = maxLength;
+        this.maxFrameLength = maxFrameLength;
+        this.truncationPolicy = Objects.requireNonNull(truncationPolicy, "The truncation policy must not be null.");
+    }
+
+    /**
+     * Encode the current context
+     * @return The header's value, or {@code null} if the context is empty
+     */
+    public String encode() {
+        return encode(BusinessContext.snapshot());
+    }
+
+    /**
+     * Encode the given context
+     * @param snapshot The context [not null]
+     * @return The header's value, or {@code null} if the context is empty
+     */
+    public String encode(BusinessContextSnapshot snapshot) {
+        Objects.requireNonNull(snapshot, "The snapshot must not be null.");
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        ContextFrame[] frames = snapshot.toArray();
+        String[] encoded = new String[frames.length];
+        StringBuilder rendered = new StringBuilder(maxFrameLength + 16);
+        StringBuilder buffer = new StringBuilder(maxLength);
+        for (int i = 0; i < frames.length; i++) {
+            rendered.setLength(0);
+            frames[i].renderTo(rendered);
+            if (rendered.length() > maxFrameLength) {
+                int cut = maxFrameLength - ELLIPSIS.length();
+                // Do not split a surrogate pair
+                rendered.setLength(Character.isHighSurrogate(rendered.charAt(cut - 1)) ? cut - 1 : cut);
+                rendered.append(ELLIPSIS);
+            }
+            buffer.setLength(0);
+            encoded[i] = percentEncode(rendered, buffer).toString();
+        }
+        int total = VERSION.length();
+        for (String entry : encoded) {
+            total += entry.length() + 1;
+        }
+        boolean outermost = truncationPolicy == TruncationPolicy.KEEP_OUTERMOST;
+        int kept = encoded.length;
+        if (total > maxLength) {
+            // Room left once the version and the truncation marker are written
+            int budget = maxLength - VERSION.length() - TRUNCATED.length() - 1;
+            kept = 0;
+            while (kept < encoded.length) {
+                String entry = encoded[outermost ? kept : encoded.length - 1 - kept];
+                if (entry.length() + 1 > budget) {
+                    break;
+                }
+                budget -= entry.length() + 1;
+                kept++;
+            }
+        }
+        buffer.setLength(0);
+        buffer.append(VERSION);
+        if (!outermost && kept < encoded.length) {
+            buffer.append(SEPARATOR).append(TRUNCATED);
+        }
+        int first = outermost ? 0 : encoded.length - kept;
+        for (int i = first; i < first + kept; i++) {
+            buffer.append(SEPARATOR).append(encoded[i]);
+        }
+        if (outermost && kept < encoded.length) {
+            buffer.append(SEPARATOR).append(TRUNCATED);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Decode the given header. Frames are only percent-decoded when rendered.
+     * @param header The header's value, or {@code null}
+     * @return The decoded frames, or an empty context if the header is missing or invalid
+     */
+    public BusinessContextSnapshot decode(CharSequence header) {
+        if (header == null || header.length() > MAX_DECODED_LENGTH || !startsWithVersion(header)) {
+            return BusinessContextSnapshot.EMPTY;
+        }
+        String value = header.toString();
+        BusinessContextSnapshot snapshot = BusinessContextSnapshot.EMPTY;
+        int start = VERSION.length() + 1;
+        while (start <= value.length()) {
+            int end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = value.length();
+            }
+            if (end > start) {
+                snapshot = snapshot.push(new RemoteFrame(value, start, end));
+            }
+            start = end + 1;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Decode the given header, and place its frames under the current context
+     * @param header The header's value, or {@code null}
+     * @return The new context, to be restored for the duration of the remote call's processing (eg. with
+     * {@link BusinessContext#runWith(BusinessContextSnapshot, Runnable)})
+     */
+    public BusinessContextSnapshot join(CharSequence header) {
+        return prefix(decode(header), BusinessContext.snapshot());
+    }
+
+    /**
+     * Place the given remote frames under the given local context
+     * @param remote The remote frames [not null]
+     * @param local The local context [not null]
+     * @return A context holding the remote frames, and the local ones on top of them
+     */
+    public static BusinessContextSnapshot prefix(BusinessContextSnapshot remote, BusinessContextSnapshot local) {
+        Objects.requireNonNull(remote, "The remote context must not be null.");
+        Objects.requireNonNull(local, "The local context must not be null.");
+        if (remote.isEmpty()) {
+            return local;
+        }
+        BusinessContextSnapshot[] nodes = new BusinessContextSnapshot[local.depth()];
+        BusinessContextSnapshot node = local;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            nodes[i] = node;
+            node = node.pop();
+        }
+        BusinessContextSnapshot snapshot = remote;
+        for (BusinessContextSnapshot localNode : nodes) {
+            snapshot = localNode.copyOnto(snapshot);
+        }
+        return snapshot;
+    }
+
+    private static boolean startsWithVersion(CharSequence header) {
+        if (header.length() <= VERSION.length() || header.charAt(VERSION.length()) != SEPARATOR) {
+            return false;
+        }
+        for (int i = 0; i < VERSION.length(); i++) {
+            if (header.charAt(i) != VERSION.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Percent-encode the given text, keeping the characters allowed in W3C baggage values, except {@code %+,~} */
+    private static StringBuilder percentEncode(CharSequence text, StringBuilder buffer) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                buffer.append('+');
+            } else if (c > 0x20 && c < 0x7F && c != '"' && c != ',' && c != ';' && c != '\\' && c != '%' && c != '+' && c != '~') {
+                buffer.append(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < text.length() ? i + 2 : i + 1;
+                for (byte b : text.subSequence(i, end).toString().getBytes(StandardCharsets.UTF_8)) {
+                    buffer.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i = end - 1;
+            }
+        }
+        return buffer;
+    }
+
+    /** Frame decoded from a header, only percent-decoded when rendered */
+    private static final class RemoteFrame extends ContextFrame {
+
+        private final String header;
+        private final int start;
+        private final int end;
+
+        RemoteFrame(String header, int start, int end) {
+            this.header = header;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String getKey() {
+            return REMOTE_KEY;
+        }
+
+        @Override
+        void format(StringBuilder buffer) {
+            if (end - start == TRUNCATED.length() && header.startsWith(TRUNCATED, start)) {
+                buffer.append(ELLIPSIS);
+                return;
+            }
+            StringBuilder decoded = new StringBuilder(end - start);
+            byte[] bytes = null;
+            int byteCount = 0;
+            for (int i = start; i < end; i++) {
+                char c = header.charAt(i);
+                if (c == '%' && i + 2 < end && hex(header.charAt(i + 1)) >= 0 && hex(header.charAt(i + 2)) >= 0) {
+                    if (bytes == null) {
+                        bytes = new byte[(end - i) / 3];
+                    }
+                    bytes[byteCount++] = (byte) (hex(header.charAt(i + 1)) << 4 | hex(header.charAt(i + 2)));
+                    i += 2;
+                    continue;
+                }
+                if (byteCount > 0) {
+                    decoded.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+                    byteCount = 0;
+                }
+                decoded.append(c == '+' ? ' ' : c);
+            }
+            if (byteCount > 0) {
+                decoded.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+            }
+            appendSanitized(decoded, buffer);
+        }
+
+        /** Append the given text, replacing its control characters, line separators and unpaired surrogates */
+        private static void appendSanitized(CharSequence text, StringBuilder buffer) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    buffer.append(c).append(text.charAt(++i));
+                } else if (Character.isISOControl(c) || Character.isSurrogate(c) || c == '\u2028' || c == '\u2029') {
+                    buffer.append(REPLACEMENT);
+                } else {
+                    buffer.append(c);
+                }
+            }
+        }
+
+        private static int hex(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            } else if (c >= 'A' && c <= 'F') {
+                return c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            }
+            return -1;
+        }
+    }
+
+}
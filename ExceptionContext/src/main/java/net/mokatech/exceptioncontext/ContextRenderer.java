@@ -0,0 +1,239 @@
+package net.mokatech.exceptioncontext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * <p>Renders the business context of {@link BusinessException}s : a header (the exception's class name and message,
+ * as in {@code Throwable.toString()}), followed by each frame, preceded by a separator.
+ * <p>Frames are rendered into a buffer before anything is written to the target, so that no lock is held on a shared
+ * stream while frames are being rendered, and the whole context is written with a single call. Each thread reuses its
+ * own buffer, so rendering does not produce intermediate strings.
+ * <p>Renderers built with a cause separator (such as {@link #MERGED_CAUSES}) render the chain of business exception
+ * causes as a single context : the frames the causes share with the exceptions they are wrapped in are only rendered
+ * once, and each cause is followed by the frames it adds.
+ * <p>Renderers are immutable and thread-safe.
+ */
+public final class ContextRenderer {
+
+    /** Default separator, preceding each frame */
+    public static final String DEFAULT_SEPARATOR = "\n while ";
+    /** Default separator, preceding each cause, when causes are rendered */
+    public static final String DEFAULT_CAUSE_SEPARATOR = "\n caused by ";
+    /** Default renderer, without any length limit */
+    public static final ContextRenderer DEFAULT = new ContextRenderer(DEFAULT_SEPARATOR, Integer.MAX_VALUE);
+    /** Renderer merging the contexts of the business exception causes, without any length limit */
+    public static final ContextRenderer MERGED_CAUSES = new ContextRenderer(DEFAULT_SEPARATOR, DEFAULT_CAUSE_SEPARATOR, Integer.MAX_VALUE);
+
+    /** Appended to truncated renderings */
+    private static final String ELLIPSIS = "...";
+    /** Thread-local buffers grown beyond this capacity are not kept for reuse */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    /** Bounds the rendered causes, as cause chains may be cyclic */
+    private static final int MAX_MERGED_CAUSES = 32;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[256]);
+
+    private final CharSequence separator;
+    private final CharSequence causeSeparator;
+    private final int maxLength;
+
+    /**
+     * @param separator The separator preceding each frame [not null]
+     * @param maxLength The maximum length of the rendered context ; longer renderings are truncated and end with
+     * {@code "..."}
+     */
+    public ContextRenderer(CharSequence separator, int maxLength) {
+        this(separator, null, maxLength);
+    }
+
+    /**
+     * @param separator The separator preceding each frame [not null]
+     * @param causeSeparator The separator preceding each business exception cause, whose contexts are merged with the
+     * exception's one ; {@code null} to only render the exception's context
+     * @param maxLength The maximum length of the rendered context ; longer renderings are truncated and end with
+     * {@code "..."}
+     */
+    public ContextRenderer(CharSequence separator, CharSequence causeSeparator, int maxLength) {
+        Objects.requireNonNull(separator, "The separator must not be null.");
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("The maximum length must not be negative.");
+        }
+        this.separator = separator;
+        this.causeSeparator = causeSeparator;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Render the given exception's context into the given buffer
+     * @param exception The exception
+     * @param buffer The buffer to append to
+     * @return The buffer
+     */
+    public StringBuilder render(BusinessException exception, StringBuilder buffer) {
+        if (BusinessContextMetrics.enabled) {
+            long start = System.nanoTime();
+            renderFrames(exception, buffer);
+            BusinessContextMetrics.recordRender(System.nanoTime() - start);
+            return buffer;
+        }
+        return renderFrames(exception, buffer);
+    }
+
+    private StringBuilder renderFrames(BusinessException exception, StringBuilder buffer) {
+        int start = buffer.length();
+        appendHeader(exception, buffer);
+        BusinessContextSnapshot snapshot = exception.getContextSnapshot();
+        appendFrames(snapshot, 0, buffer, start);
+        if (causeSeparator != null) {
+            Throwable cause = exception.getCause();
+            for (int i = 0; i < MAX_MERGED_CAUSES && cause instanceof BusinessException; i++) {
+                if (buffer.length() - start > maxLength) {
+                    break;
+                }
+                BusinessContextSnapshot causeSnapshot = ((BusinessException) cause).getContextSnapshot();
+                int sharedDepth = causeSnapshot.sharedDepth(snapshot);
+                buffer.append(causeSeparator);
+                appendHeader(cause, buffer);
+                if (sharedDepth < snapshot.depth()) {
+                    // The wrapping exception's context goes on with frames the cause did not see
+                    buffer.append(" (after frame ").append(sharedDepth).append(')');
+                }
+                appendFrames(causeSnapshot, sharedDepth, buffer, start);
+                snapshot = causeSnapshot;
+                cause = cause.getCause();
+            }
+        }
+        if (buffer.length() - start > maxLength) {
+            if (maxLength >= ELLIPSIS.length()) {
+                buffer.setLength(start + maxLength - ELLIPSIS.length());
+                buffer.append(ELLIPSIS);
+            } else {
+                buffer.setLength(start + maxLength);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Render the given exception's context into the given {@code Appendable}. {@code Writer}s and {@code CharBuffer}s
+     * are written to directly from a reusable array, without creating any string.
+     * @param exception The exception
+     * @param out The target
+     * @param <A> The target's type
+     * @return The target
+     * @throws IOException if the target throws one
+     */
+    public <A extends Appendable> A render(BusinessException exception, A out) throws IOException {
+        if (out instanceof StringBuilder) {
+            render(exception, (StringBuilder) out);
+            return out;
+        }
+        StringBuilder buffer = render(exception, buffer());
+        if (out instanceof Writer) {
+            ((Writer) out).write(chars(buffer), 0, buffer.length());
+        } else if (out instanceof CharBuffer) {
+            ((CharBuffer) out).put(chars(buffer), 0, buffer.length());
+        } else {
+            out.append(buffer);
+        }
+        return out;
+    }
+
+    /**
+     * Render the given exception's context into the current thread's reusable buffer.
+     * <p>The returned buffer must not be kept : its content is only valid until the next rendering on the same thread.
+     * @param exception The exception
+     * @return The current thread's buffer, holding the rendered context
+     */
+    public StringBuilder renderToThreadLocalBuffer(BusinessException exception) {
+        return render(exception, buffer());
+    }
+
+    /**
+     * Render the given exception's context as a string
+     * @param exception The exception
+     * @return The rendered context
+     */
+    public String renderToString(BusinessException exception) {
+        return renderToThreadLocalBuffer(exception).toString();
+    }
+
+    /**
+     * Print the given exception's context, followed by a line separator
+     * @param exception The exception
+     * @param printer The target
+     */
+    public void print(BusinessException exception, PrintStream printer) {
+        StringBuilder buffer = renderToThreadLocalBuffer(exception);
+        buffer.append(System.lineSeparator());
+        // PrintStream offers no way to write characters from an array slice, nor a CharSequence without converting it
+        printer.append(buffer);
+    }
+
+    /**
+     * Print the given exception's context, followed by a line separator
+     * @param exception The exception
+     * @param printer The target
+     */
+    public void print(BusinessException exception, PrintWriter printer) {
+        try {
+            render(exception, printer);
+        } catch (IOException e) {
+            // PrintWriters never throw IOExceptions
+            throw new UncheckedIOException(e);
+        }
+        printer.println();
+    }
+
+    /** Append the frames of the given snapshot, from the given depth */
+    private void appendFrames(BusinessContextSnapshot snapshot, int fromDepth, StringBuilder buffer, int start) {
+        ContextFrame[] frames = snapshot.toArray();
+        for (int i = fromDepth; i < frames.length; i++) {
+            if (buffer.length() - start > maxLength) {
+                break;
+            }
+            buffer.append(separator);
+            frames[i].renderTo(buffer);
+        }
+    }
+
+    private static void appendHeader(Throwable exception, StringBuilder buffer) {
+        buffer.append(exception.getClass().getName());
+        String message = exception.getLocalizedMessage();
+        if (message != null) {
+            buffer.append(": ").append(message);
+        }
+    }
+
+    /** @return The current thread's buffer, emptied */
+    private static StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(256);
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /** @return The current thread's char array, holding the given buffer's content */
+    private static char[] chars(StringBuilder buffer) {
+        char[] chars = CHARS.get();
+        if (chars.length < buffer.length()) {
+            chars = new char[Math.max(buffer.length(), chars.length * 2)];
+            if (chars.length <= MAX_RETAINED_CAPACITY) {
+                CHARS.set(chars);
+            }
+        }
+        buffer.getChars(0, buffer.length(), chars, 0);
+        return chars;
+    }
+
+}
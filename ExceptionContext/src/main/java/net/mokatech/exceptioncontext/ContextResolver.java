@@ -0,0 +1,78 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the contexts captured in the {@link CapturePolicy.Mode#HYBRID} mode, in the background.
+ */
+final class ContextResolver {
+
+    /** Number of pending resolutions beyond which the default executor skips them */
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private static volatile Executor executor;
+
+    private ContextResolver() {
+    }
+
+    static void setExecutor(Executor newExecutor) {
+        executor = newExecutor;
+    }
+
+    /**
+     * Resolve the given context in the background
+     * <p>The exception the context belongs to is not handed over, as it may not be fully constructed yet : it polls
+     * the returned resolution instead.
+     * @param captured The captured context
+     * @param cause The cause whose context the resolved one shares its bottom frames with, or {@code null}
+     * @return The pending resolution, or {@code null} if it was rejected and the context is simply left deferred
+     */
+    static Resolution resolveLater(BusinessContextSnapshot captured, BusinessException cause) {
+        Resolution resolution = new Resolution();
+        Executor target = executor;
+        try {
+            (target != null ? target : DefaultExecutor.INSTANCE).execute(() -> {
+                BusinessContextSnapshot resolved = captured.resolve();
+                BusinessContextSnapshot causeContext = cause == null ? null : cause.getContextSnapshot();
+                if (causeContext != null) {
+                    resolved = resolved.shareWith(causeContext);
+                }
+                resolution.resolved = resolved;
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return resolution;
+    }
+
+    /** A context being resolved in the background */
+    static final class Resolution {
+
+        /** The resolved context, {@code null} until it is available */
+        private volatile BusinessContextSnapshot resolved;
+
+        private Resolution() {
+        }
+
+        /** @return The resolved context, or {@code null} if it is not available yet */
+        BusinessContextSnapshot get() {
+            return resolved;
+        }
+    }
+
+    /** Lazily created, when the first context is resolved */
+    private static final class DefaultExecutor {
+
+        static final Executor INSTANCE = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY), task -> {
+                    Thread thread = new Thread(task, "business-context-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+}
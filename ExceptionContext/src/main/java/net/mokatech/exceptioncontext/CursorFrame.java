@@ -0,0 +1,215 @@
+package net.mokatech.exceptioncontext;
+
+/**
+ * <p>Mutable frame, meant to be pushed once around a loop, and updated in place for each item :
+ * <pre>
+ *     static final FrameTemplate ORDER = FrameTemplate.of("Processing order {0} (item {1})", SlotType.LONG, SlotType.LONG);
+ *     ...
+ *     CursorFrame cursor = ORDER.cursor();
+ *     try (BusinessContextScope scope = BusinessContext.open(cursor)) {
+ *         for (Order order : orders) {
+ *             cursor.set(order.getId(), index++);
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ * <p>Updating a cursor neither allocates anything, nor touches the stack. When the context is captured (by
+ * {@link BusinessContext#snapshot()}, and hence by {@link BusinessException}s and the {@code concurrent} decorators),
+ * cursors are frozen into immutable {@link StructuredFrame}s holding their current values.
+ * <p>Cursors are not thread-safe : they must only be updated by the thread which pushed them.
+ */
+public final class CursorFrame extends ContextFrame {
+
+    private final FrameTemplate template;
+    private long n0;
+    private long n1;
+    private Object r0;
+    private Object r1;
+    /** The last frozen copy, reused until the values change, so that successive captures share it */
+    private StructuredFrame frozen;
+
+    CursorFrame(FrameTemplate template) {
+        this.template = template;
+    }
+
+    /** @return The template this cursor was built from */
+    public FrameTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have one numeric slot
+     * @param n0 The value of the first numeric slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0) {
+        template.check(1, 0, n0, 0, null, null);
+        this.n0 = n0;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have two numeric slots
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0, long n1) {
+        template.check(2, 0, n0, n1, null, null);
+        this.n0 = n0;
+        this.n1 = n1;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have one reference slot
+     * @param r0 The value of the first reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(Object r0) {
+        template.check(0, 1, 0, 0, r0, null);
+        this.r0 = r0;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have two reference slots
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(Object r0, Object r1) {
+        template.check(0, 2, 0, 0, r0, r1);
+        this.r0 = r0;
+        this.r1 = r1;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have one numeric slot and one reference slot
+     * @param n0 The value of the first numeric slot
+     * @param r0 The value of the first reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0, Object r0) {
+        template.check(1, 1, n0, 0, r0, null);
+        this.n0 = n0;
+        this.r0 = r0;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have two numeric slots and one reference slot
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @param r0 The value of the first reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0, long n1, Object r0) {
+        template.check(2, 1, n0, n1, r0, null);
+        this.n0 = n0;
+        this.n1 = n1;
+        this.r0 = r0;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have one numeric slot and two reference slots
+     * @param n0 The value of the first numeric slot
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0, Object r0, Object r1) {
+        template.check(1, 2, n0, 0, r0, r1);
+        this.n0 = n0;
+        this.r0 = r0;
+        this.r1 = r1;
+        frozen = null;
+        return this;
+    }
+
+    /**
+     * Update the values of this cursor, whose template must have two numeric slots and two reference slots
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return This cursor
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public CursorFrame set(long n0, long n1, Object r0, Object r1) {
+        template.check(2, 2, n0, n1, r0, r1);
+        this.n0 = n0;
+        this.n1 = n1;
+        this.r0 = r0;
+        this.r1 = r1;
+        frozen = null;
+        return this;
+    }
+
+    @Override
+    boolean isMutable() {
+        return true;
+    }
+
+    /** @return A frame holding the current values of this cursor */
+    @Override
+    public StructuredFrame freeze() {
+        StructuredFrame frame = frozen;
+        if (frame == null) {
+            frame = new StructuredFrame(template, n0, n1, r0, r1);
+            frozen = frame;
+        }
+        return frame;
+    }
+
+    @Override
+    public String getKey() {
+        return template.getKey();
+    }
+
+    @Override
+    public int getSlotCount() {
+        return template.getSlotCount();
+    }
+
+    @Override
+    public Object getValue(int slot) {
+        return freeze().getValue(slot);
+    }
+
+    @Override
+    public long getLong(int slot) {
+        return freeze().getLong(slot);
+    }
+
+    @Override
+    MessageTemplate messageTemplate() {
+        return template.messageTemplate();
+    }
+
+    @Override
+    void format(StringBuilder buffer) {
+        freeze().renderTo(buffer);
+    }
+
+    @Override
+    String render() {
+        return freeze().get();
+    }
+
+}
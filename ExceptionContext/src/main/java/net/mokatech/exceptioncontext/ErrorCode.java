@@ -0,0 +1,128 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Error code of {@link BusinessException}s, declared once with a stable integer id, a name and a message pattern,
+ * typically as a constant (or held by an enum) :
+ * <pre>
+ *     static final ErrorCode INVALID_AMOUNT = ErrorCode.of(1001, "INVALID_AMOUNT", "Invalid amount {0} for order {1}");
+ *     ...
+ *     throw new BusinessException(INVALID_AMOUNT, amount, orderId);
+ * </pre>
+ * <p>Codes are validated when they are declared : the pattern is compiled once, and ids and names must be unique. As
+ * constants are created when their class is initialized, mistakes are reported at startup (see
+ * {@link ContextCatalog#validate(Class[])}) rather than when a message is first rendered in production.
+ * <p>Exceptions only store their code and arguments, and format their message when it is first read ; the message of
+ * codes without placeholders is computed once. Ids are meant to be stable across versions and processes : serialized
+ * exceptions refer to their code by id.
+ */
+public final class ErrorCode {
+
+    private static final ConcurrentMap<Integer, ErrorCode> BY_ID = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ErrorCode> BY_NAME = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final String name;
+    private final MessageTemplate template;
+
+    private ErrorCode(int id, String name, MessageTemplate template) {
+        this.id = id;
+        this.name = name;
+        this.template = template;
+    }
+
+    /**
+     * Declare an error code
+     * @param id The code's id, unique and positive
+     * @param name The code's name, unique [not null]
+     * @param pattern The message pattern, using {@code {0}}, {@code {1}}... placeholders [not null]
+     * @return The error code, or the existing one if the very same code is declared again
+     * @throws IllegalArgumentException if the id is not positive, the pattern is invalid, or the id or name is already
+     * declared by another code
+     */
+    public static synchronized ErrorCode of(int id, String name, String pattern) {
+        Objects.requireNonNull(name, "The name must not be null.");
+        Objects.requireNonNull(pattern, "The pattern must not be null.");
+        if (id <= 0) {
+            throw new IllegalArgumentException("The id of the error code " + name + " must be positive : " + id);
+        }
+        MessageTemplate template = MessageTemplate.compile(pattern);
+        ErrorCode existing = BY_ID.get(id);
+        if (existing != null) {
+            if (existing.name.equals(name) && existing.getPattern().equals(pattern)) {
+                return existing;
+            }
+            throw new IllegalArgumentException("The id " + id + " of the error code " + name + " is already declared by " + existing.name);
+        }
+        existing = BY_NAME.get(name);
+        if (existing != null) {
+            throw new IllegalArgumentException("The error code " + name + " is already declared, with the id " + existing.id);
+        }
+        ErrorCode code = new ErrorCode(id, name, template);
+        BY_ID.put(id, code);
+        BY_NAME.put(name, code);
+        return code;
+    }
+
+    /**
+     * @param id The code's id
+     * @return The code declared with the given id, or {@code null} if there is none
+     */
+    public static ErrorCode forId(int id) {
+        return BY_ID.get(id);
+    }
+
+    /**
+     * @param name The code's name
+     * @return The code declared with the given name, or {@code null} if there is none
+     */
+    public static ErrorCode forName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /** @return All the codes declared so far */
+    public static Collection<ErrorCode> values() {
+        return Collections.unmodifiableList(new ArrayList<>(BY_ID.values()));
+    }
+
+    /** @return The code's id */
+    public int getId() {
+        return id;
+    }
+
+    /** @return The code's name */
+    public String getName() {
+        return name;
+    }
+
+    /** @return The message pattern */
+    public String getPattern() {
+        return template.getPattern();
+    }
+
+    /** @return The number of arguments expected by the message pattern */
+    public int getArgumentCount() {
+        return template.getArgumentCount();
+    }
+
+    /**
+     * Format the message of this code
+     * @param args The arguments
+     * @return The formatted message
+     */
+    public String format(Object... args) {
+        return template.format(args);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
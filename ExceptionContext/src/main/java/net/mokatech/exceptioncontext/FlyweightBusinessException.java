@@ -0,0 +1,163 @@
+package net.mokatech.exceptioncontext;
+
+import net.mokatech.exceptioncontext.report.AsyncContextReporter;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Preallocated {@link BusinessException}, shared by all the threads throwing a given error code, for hot rejection
+ * paths (eg. validation failures thrown and caught in the same layer) :
+ * <pre>
+ *     static final FlyweightBusinessException INVALID_AMOUNT = FlyweightBusinessException.of("INVALID_AMOUNT", "Invalid amount");
+ *     ...
+ *     if (amount &lt; 0) {
+ *         throw INVALID_AMOUNT;
+ *     }
+ * </pre>
+ * <p>Throwing a shared instance allocates nothing : it has no stacktrace, no suppressed exceptions and no cause, and
+ * does not capture the context (its {@link CapturePolicy} is not even consulted).
+ * <p><b>Context</b> : a shared instance reports the current context of the thread inspecting it, at the point of
+ * inspection. This is not the context of the throw site : by the time a catch handler runs, the frames pushed between
+ * the throw site and the handler have already been popped (by {@code finally} blocks, scopes, or the aspect), so a
+ * handler sees its own context. Code needing the throw site's context must use regular {@link BusinessException}s.
+ * <p><b>Thread safety</b> : shared instances are immutable, and can be thrown concurrently by any number of threads.
+ * Anything which keeps the exception, or uses it on another thread (eg. an
+ * {@link net.mokatech.exceptioncontext.report.ExceptionAggregator}), must be given a private copy instead, holding the
+ * context of the thread making it : see {@link #capture()}. {@link #reportContext(AsyncContextReporter)} and
+ * serialization do so automatically.
+ */
+public final class FlyweightBusinessException extends BusinessException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ConcurrentMap<String, FlyweightBusinessException> INSTANCES = new ConcurrentHashMap<>();
+
+    private final String code;
+    private final boolean shared;
+
+    private FlyweightBusinessException(String code, String message, boolean shared) {
+        super(message, null, false, false);
+        this.code = code;
+        this.shared = shared;
+        if (!shared) {
+            captureContext();
+        }
+    }
+
+    /**
+     * Get the shared instance for the given error code, creating it if needed
+     * @param code The error code [not null]
+     * @param message The exception's message
+     * @return The shared instance
+     * @throws IllegalArgumentException if the error code is already registered with another message
+     */
+    public static FlyweightBusinessException of(String code, String message) {
+        Objects.requireNonNull(code, "The code must not be null.");
+        FlyweightBusinessException instance = INSTANCES.get(code);
+        if (instance == null) {
+            FlyweightBusinessException newInstance = new FlyweightBusinessException(code, message, true);
+            instance = INSTANCES.putIfAbsent(code, newInstance);
+            if (instance == null) {
+                return newInstance;
+            }
+        }
+        if (!Objects.equals(instance.getMessage(), message)) {
+            throw new IllegalArgumentException("The error code " + code + " is already registered with another message : " + instance.getMessage());
+        }
+        return instance;
+    }
+
+    /**
+     * Get the shared instance for the given declared error code, creating it if needed
+     * @param code The error code, whose message must not have any argument [not null]
+     * @return The shared instance, registered under the code's name
+     * @throws IllegalArgumentException if the code's message has arguments, or if its name is already registered with
+     * another message
+     */
+    public static FlyweightBusinessException of(ErrorCode code) {
+        Objects.requireNonNull(code, "The code must not be null.");
+        if (code.getArgumentCount() > 0) {
+            throw new IllegalArgumentException("The message of the error code " + code + " has arguments : " + code.getPattern());
+        }
+        return of(code.getName(), code.format());
+    }
+
+    /**
+     * Get the shared instance for the given error code
+     * @param code The error code
+     * @return The shared instance
+     * @throws IllegalArgumentException if the error code is not registered
+     */
+    public static FlyweightBusinessException forCode(String code) {
+        FlyweightBusinessException instance = INSTANCES.get(code);
+        if (instance == null) {
+            throw new IllegalArgumentException("Unknown error code : " + code);
+        }
+        return instance;
+    }
+
+    /** @return The error code */
+    public String getCode() {
+        return code;
+    }
+
+    /** @return {@code true} if this is the shared instance of its error code, {@code false} if it is a private copy */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Capture the current context of the calling thread into a private copy of this exception, which can be kept, or
+     * handed over to another thread. Within a catch handler, this is the handler's context, not the throw site's.
+     * @return A private copy holding the current context (according to the {@link CapturePolicy} registered for this
+     * class), or this exception if it already is a private copy
+     */
+    public FlyweightBusinessException capture() {
+        return shared ? new FlyweightBusinessException(code, getMessage(), false) : this;
+    }
+
+    /**
+     * Get the business context : the current context of the calling thread for shared instances, the captured one for
+     * private copies
+     * @return The business context snapshot
+     */
+    @Override
+    public BusinessContextSnapshot getContextSnapshot() {
+        return shared ? BusinessContext.snapshot() : super.getContextSnapshot();
+    }
+
+    /**
+     * Get how long each step of the business context has been running : until now for shared instances, until the
+     * capture for private copies
+     * @return The durations in nanoseconds, the first element being the bottom of the stack ; -1 for the steps that
+     * were not profiled
+     */
+    @Override
+    public long[] getStepDurations() {
+        if (!shared) {
+            return super.getStepDurations();
+        }
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        if (BusinessContextProfiler.enabled) {
+            return BusinessContextProfiler.getElapsedNanos(snapshot, System.nanoTime());
+        }
+        long[] durations = new long[snapshot.depth()];
+        Arrays.fill(durations, -1);
+        return durations;
+    }
+
+    /** Hand a private copy of this exception over to the given reporter, as it renders it on its own thread */
+    @Override
+    public boolean reportContext(AsyncContextReporter reporter) {
+        return reporter.report(capture());
+    }
+
+    /** Shared instances are serialized as private copies, holding the serializing thread's context */
+    private Object writeReplace() {
+        return capture();
+    }
+
+}
@@ -0,0 +1,303 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Objects;
+
+/**
+ * <p>Compiled template of {@link StructuredFrame}s, declaring the type of each of its placeholders.
+ * <p>Templates are meant to be created once (typically as constants) and used to build frames on hot paths :
+ * <pre>
+ *     static final FrameTemplate ORDER_LINE = FrameTemplate.of("Processing order {0}, line {1}", SlotType.LONG, SlotType.INT);
+ *     ...
+ *     BusinessContext.push(ORDER_LINE.frame(orderId, line));
+ * </pre>
+ * <p>Numeric slots ({@link SlotType#LONG}, {@link SlotType#INT}) are stored as primitives, and reference slots
+ * ({@link SlotType#STRING}, {@link SlotType#ENUM}) as references, so building a frame never boxes its values. A
+ * template may declare up to {@value #MAX_NUMERIC_SLOTS} numeric slots and {@value #MAX_REFERENCE_SLOTS} reference
+ * slots. The {@code frame()} factory methods take the numeric values first, then the reference values, each in the
+ * order of their placeholders. Values are checked against the slot types : {@link SlotType#INT} values must fit in an
+ * {@code int}, {@link SlotType#STRING} values must be {@code String}s and {@link SlotType#ENUM} values enums (both may
+ * be {@code null}).
+ */
+public final class FrameTemplate {
+
+    /** Maximum number of numeric slots per template */
+    public static final int MAX_NUMERIC_SLOTS = 2;
+    /** Maximum number of reference slots per template */
+    public static final int MAX_REFERENCE_SLOTS = 2;
+
+    /** Type of the values held by a slot */
+    public enum SlotType {
+        LONG(true), INT(true), STRING(false), ENUM(false);
+
+        private final boolean numeric;
+
+        SlotType(boolean numeric) {
+            this.numeric = numeric;
+        }
+
+        /** @return {@code true} if values of this type are stored as primitives */
+        public boolean isNumeric() {
+            return numeric;
+        }
+    }
+
+    private final String key;
+    private final MessageTemplate template;
+    private final SlotType[] slotTypes;
+    /** Index of each slot in the frames' numeric or reference storage */
+    private final int[] storageIndexes;
+    private final int numericSlotCount;
+    private final int referenceSlotCount;
+    /** Type of the values in each numeric or reference storage index */
+    private final SlotType[] numericTypes = new SlotType[MAX_NUMERIC_SLOTS];
+    private final SlotType[] referenceTypes = new SlotType[MAX_REFERENCE_SLOTS];
+
+    private FrameTemplate(String key, MessageTemplate template, SlotType[] slotTypes) {
+        this.key = key;
+        this.template = template;
+        this.slotTypes = slotTypes;
+        this.storageIndexes = new int[slotTypes.length];
+        int numeric = 0;
+        int reference = 0;
+        for (int i = 0; i < slotTypes.length; i++) {
+            Objects.requireNonNull(slotTypes[i], "The slot types must not be null.");
+            storageIndexes[i] = slotTypes[i].isNumeric() ? numeric++ : reference++;
+        }
+        if (numeric > MAX_NUMERIC_SLOTS || reference > MAX_REFERENCE_SLOTS) {
+            throw new IllegalArgumentException("Too many slots in the template : " + template.getPattern());
+        }
+        for (int i = 0; i < slotTypes.length; i++) {
+            (slotTypes[i].isNumeric() ? numericTypes : referenceTypes)[storageIndexes[i]] = slotTypes[i];
+        }
+        for (int index : template.argumentIndexes()) {
+            if (index >= slotTypes.length) {
+                throw new IllegalArgumentException("No slot type declared for placeholder {" + index + "} in the template : " + template.getPattern());
+            }
+        }
+        this.numericSlotCount = numeric;
+        this.referenceSlotCount = reference;
+    }
+
+    /**
+     * Compile a template, whose key is its pattern
+     * @param pattern The pattern, using {@code {0}}, {@code {1}}... placeholders [not null]
+     * @param slotTypes The type of each placeholder
+     * @return The compiled template
+     * @throws IllegalArgumentException if the pattern is invalid, or does not match the slot types
+     */
+    public static FrameTemplate of(String pattern, SlotType... slotTypes) {
+        return named(pattern, pattern, slotTypes);
+    }
+
+    /**
+     * Compile a template, with an explicit key
+     * @param key The key identifying the frames built from this template [not null]
+     * @param pattern The pattern, using {@code {0}}, {@code {1}}... placeholders [not null]
+     * @param slotTypes The type of each placeholder
+     * @return The compiled template
+     * @throws IllegalArgumentException if the pattern is invalid, or does not match the slot types
+     */
+    public static FrameTemplate named(String key, String pattern, SlotType... slotTypes) {
+        Objects.requireNonNull(key, "The key must not be null.");
+        MessageTemplate template = MessageTemplate.compile(pattern);
+        if (template.usesMessageFormat()) {
+            throw new IllegalArgumentException("Format types and styles are not supported in frame templates : " + pattern);
+        }
+        return new FrameTemplate(key, template, slotTypes.clone());
+    }
+
+    /** @return The key identifying the frames built from this template */
+    public String getKey() {
+        return key;
+    }
+
+    /** @return The template's pattern */
+    public String getPattern() {
+        return template.getPattern();
+    }
+
+    /** @return The number of slots */
+    public int getSlotCount() {
+        return slotTypes.length;
+    }
+
+    /**
+     * @param slot The slot index
+     * @return The type of the given slot
+     */
+    public SlotType getSlotType(int slot) {
+        return slotTypes[slot];
+    }
+
+    /**
+     * Build a frame from this template, which must not have any slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame() {
+        return create(0, 0, 0, 0, null, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have one numeric slot
+     * @param n0 The value of the first numeric slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0) {
+        return create(1, 0, n0, 0, null, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have two numeric slots
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0, long n1) {
+        return create(2, 0, n0, n1, null, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have one reference slot
+     * @param r0 The value of the first reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(Object r0) {
+        return create(0, 1, 0, 0, r0, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have two reference slots
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(Object r0, Object r1) {
+        return create(0, 2, 0, 0, r0, r1);
+    }
+
+    /**
+     * Build a frame from this template, which must have one numeric slot and one reference slot
+     * @param n0 The value of the first numeric slot
+     * @param r0 The value of the first reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0, Object r0) {
+        return create(1, 1, n0, 0, r0, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have two numeric slots and one reference slot
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @param r0 The value of the first reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0, long n1, Object r0) {
+        return create(2, 1, n0, n1, r0, null);
+    }
+
+    /**
+     * Build a frame from this template, which must have one numeric slot and two reference slots
+     * @param n0 The value of the first numeric slot
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0, Object r0, Object r1) {
+        return create(1, 2, n0, 0, r0, r1);
+    }
+
+    /**
+     * Build a frame from this template, which must have two numeric slots and two reference slots
+     * @param n0 The value of the first numeric slot
+     * @param n1 The value of the second numeric slot
+     * @param r0 The value of the first reference slot
+     * @param r1 The value of the second reference slot
+     * @return The new frame
+     * @throws IllegalArgumentException if the template has other slots, or a value does not fit its slot type
+     */
+    public StructuredFrame frame(long n0, long n1, Object r0, Object r1) {
+        return create(2, 2, n0, n1, r0, r1);
+    }
+
+    /**
+     * Create a mutable frame, to be pushed once around a loop and updated in place for each item
+     * @return A new cursor, whose slots are all zero or {@code null}
+     */
+    public CursorFrame cursor() {
+        return new CursorFrame(this);
+    }
+
+    private StructuredFrame create(int numericCount, int referenceCount, long n0, long n1, Object r0, Object r1) {
+        check(numericCount, referenceCount, n0, n1, r0, r1);
+        return new StructuredFrame(this, n0, n1, r0, r1);
+    }
+
+    /** Check the number of values passed to a factory method, and the values against the slot types */
+    void check(int numericCount, int referenceCount, long n0, long n1, Object r0, Object r1) {
+        if (numericCount != numericSlotCount || referenceCount != referenceSlotCount) {
+            throw new IllegalArgumentException("The template " + key + " expects " + numericSlotCount + " numeric and "
+                    + referenceSlotCount + " reference values");
+        }
+        if (numericCount > 0) {
+            checkNumeric(numericTypes[0], n0);
+            if (numericCount > 1) {
+                checkNumeric(numericTypes[1], n1);
+            }
+        }
+        if (referenceCount > 0) {
+            checkReference(referenceTypes[0], r0);
+            if (referenceCount > 1) {
+                checkReference(referenceTypes[1], r1);
+            }
+        }
+    }
+
+    private void checkNumeric(SlotType type, long value) {
+        if (type == SlotType.INT && value != (int) value) {
+            throw new IllegalArgumentException("The value " + value + " does not fit the INT slot of the template " + key);
+        }
+    }
+
+    private void checkReference(SlotType type, Object value) {
+        if (value != null && (type == SlotType.STRING ? !(value instanceof String) : !(value instanceof Enum))) {
+            throw new IllegalArgumentException("The value " + value + " (" + value.getClass().getName()
+                    + ") does not fit the " + type + " slot of the template " + key);
+        }
+    }
+
+    /** @return The compiled pattern */
+    MessageTemplate messageTemplate() {
+        return template;
+    }
+
+    /** @return The index of the given slot in the frames' numeric or reference storage */
+    int storageIndex(int slot) {
+        return storageIndexes[slot];
+    }
+
+    /** Render the given frame */
+    void render(StructuredFrame frame, StringBuilder buffer) {
+        String[] literals = template.literals();
+        int[] argumentIndexes = template.argumentIndexes();
+        buffer.append(literals[0]);
+        for (int i = 0; i < argumentIndexes.length; i++) {
+            frame.appendSlot(argumentIndexes[i], buffer);
+            buffer.append(literals[i + 1]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+}
@@ -0,0 +1,259 @@
+package net.mokatech.exceptioncontext;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>Precompiled, immutable and thread-safe message template, using the same {@code {0}}, {@code {1}}... placeholders
+ * and quoting rules as {@link MessageFormat}.
+ * <p>The pattern is parsed once, so formatting only appends literals and arguments to a buffer. Arguments are
+ * rendered with {@link String#valueOf(Object)}, without any locale-specific formatting. Patterns using format types
+ * or styles (eg. {@code {0,number,#.##}}) are still supported, but fall back to {@link MessageFormat}.
+ */
+public final class MessageTemplate {
+
+    private final String pattern;
+    /** Literal text surrounding the placeholders ; there is always one more literal than placeholders */
+    private final String[] literals;
+    private final int[] argumentIndexes;
+    private final boolean messageFormatFallback;
+    /** Cached frame, for patterns without placeholders */
+    private final ContextFrame constant;
+
+    private MessageTemplate(String pattern, String[] literals, int[] argumentIndexes, boolean messageFormatFallback) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.argumentIndexes = argumentIndexes;
+        this.messageFormatFallback = messageFormatFallback;
+        this.constant = needsArguments() ? null : new ConstantFrame(pattern, literals[0]);
+    }
+
+    /**
+     * Compile the given pattern
+     * @param pattern The pattern [not null]
+     * @return The compiled template
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public static MessageTemplate compile(String pattern) {
+        Objects.requireNonNull(pattern, "The pattern must not be null.");
+        List<String> literals = new ArrayList<>();
+        List<Integer> argumentIndexes = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unmatched braces in the pattern : " + pattern);
+                }
+                int index = parseIndex(pattern, i + 1, end);
+                if (index < 0) {
+                    // Format types and styles are not supported natively ; validate the pattern eagerly anyway
+                    new MessageFormat(pattern);
+                    return new MessageTemplate(pattern, new String[]{pattern}, new int[0], true);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                argumentIndexes.add(index);
+                i = end;
+            } else {
+                literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+        int[] indexes = new int[argumentIndexes.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = argumentIndexes.get(i);
+        }
+        return new MessageTemplate(pattern, literals.toArray(new String[0]), indexes, false);
+    }
+
+    /** @return The argument index between {@code start} and {@code end}, or -1 if it is not a plain index */
+    private static int parseIndex(String pattern, int start, int end) {
+        if (start == end) {
+            throw new IllegalArgumentException("Empty argument index in the pattern : " + pattern);
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = pattern.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /** @return The original pattern */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /** @return {@code true} if this template falls back to {@link MessageFormat} */
+    boolean usesMessageFormat() {
+        return messageFormatFallback;
+    }
+
+    /** @return The literal text surrounding the placeholders */
+    String[] literals() {
+        return literals;
+    }
+
+    /** @return The index of each placeholder, in order of appearance */
+    int[] argumentIndexes() {
+        return argumentIndexes;
+    }
+
+    /** @return The index of each placeholder, in order of appearance */
+    public int[] getArgumentIndexes() {
+        return argumentIndexes.clone();
+    }
+
+    /** @return The number of arguments this template refers to, ie. its highest argument index plus one */
+    public int getArgumentCount() {
+        if (messageFormatFallback) {
+            return new MessageFormat(pattern).getFormatsByArgumentIndex().length;
+        }
+        int count = 0;
+        for (int index : argumentIndexes) {
+            count = Math.max(count, index + 1);
+        }
+        return count;
+    }
+
+    /** @return {@code true} if formatting this template depends on its arguments */
+    public boolean needsArguments() {
+        return messageFormatFallback || argumentIndexes.length > 0;
+    }
+
+    /**
+     * Format this template with the given arguments
+     * @param args The arguments
+     * @return The formatted message
+     */
+    public String format(Object... args) {
+        if (!needsArguments()) {
+            return literals[0];
+        }
+        return formatTo(new StringBuilder(pattern.length() + 16 * argumentIndexes.length), args).toString();
+    }
+
+    /**
+     * Format this template with the given arguments, into the given buffer
+     * @param buffer The buffer to append to
+     * @param args The arguments
+     * @return The buffer
+     */
+    public StringBuilder formatTo(StringBuilder buffer, Object... args) {
+        if (messageFormatFallback) {
+            return buffer.append(MessageFormat.format(pattern, args));
+        }
+        buffer.append(literals[0]);
+        for (int i = 0; i < argumentIndexes.length; i++) {
+            int index = argumentIndexes[i];
+            if (args != null && index < args.length) {
+                buffer.append(args[index]);
+            } else {
+                // Same behaviour as MessageFormat
+                buffer.append('{').append(index).append('}');
+            }
+            buffer.append(literals[i + 1]);
+        }
+        return buffer;
+    }
+
+    /**
+     * Bind this template to the given arguments. The message is only formatted when the resulting frame is rendered.
+     * @param args The arguments
+     * @return A frame whose key is this template's pattern, and whose slots are the arguments
+     */
+    public ContextFrame bind(Object... args) {
+        return constant != null ? constant : new ArgumentsFrame(this, args);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static final class ConstantFrame extends ContextFrame {
+
+        private final String key;
+        private final String message;
+
+        ConstantFrame(String key, String message) {
+            this.key = key;
+            this.message = message;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        void format(StringBuilder buffer) {
+            buffer.append(message);
+        }
+
+        @Override
+        String render() {
+            return message;
+        }
+    }
+
+    private static final class ArgumentsFrame extends ContextFrame {
+
+        private final MessageTemplate template;
+        private final Object[] args;
+
+        ArgumentsFrame(MessageTemplate template, Object[] args) {
+            this.template = template;
+            this.args = args;
+        }
+
+        @Override
+        public String getKey() {
+            return template.getPattern();
+        }
+
+        @Override
+        public int getSlotCount() {
+            return args == null ? 0 : args.length;
+        }
+
+        @Override
+        public Object getValue(int slot) {
+            if (slot < 0 || slot >= getSlotCount()) {
+                return super.getValue(slot);
+            }
+            return args[slot];
+        }
+
+        @Override
+        MessageTemplate messageTemplate() {
+            return template.usesMessageFormat() ? null : template;
+        }
+
+        @Override
+        void format(StringBuilder buffer) {
+            template.formatTo(buffer, args);
+        }
+
+        @Override
+        ContextFrame resolve() {
+            return new ResolvedFrame(getKey(), get(), messageTemplate(), ResolvedFrame.immutableValues(args));
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Arrays;
+
+/**
+ * <p>Immutable copy of a frame, made when the frame is resolved (see {@link CapturePolicy.Mode}) : it holds the
+ * frame's rendered message and the values of its slots, but no longer references the objects the frame was built
+ * from (suppliers and their captured variables, intercepted method arguments...).
+ * <p>Slot values which are not known to be immutable (ie. other than strings, enums and boxed primitives) are replaced
+ * by their string value.
+ */
+final class ResolvedFrame extends ContextFrame {
+
+    private final String key;
+    private final String text;
+    private final MessageTemplate template;
+    private final Object[] slots;
+
+    ResolvedFrame(String key, String text, MessageTemplate template, Object[] slots) {
+        this.key = key;
+        this.text = text;
+        this.template = template;
+        this.slots = slots;
+    }
+
+    /** @return Copies of the given values, in which the values which may be mutable are replaced by their string value */
+    static Object[] immutableValues(Object[] values) {
+        if (values == null) {
+            return null;
+        }
+        Object[] copies = Arrays.copyOf(values, values.length, Object[].class);
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = immutableValue(copies[i]);
+        }
+        return copies;
+    }
+
+    /** @return The given value if it is immutable, or its string value */
+    static Object immutableValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Enum || value instanceof Long
+                || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Double
+                || value instanceof Float || value instanceof Boolean || value instanceof Character) {
+            return value;
+        }
+        return String.valueOf(value);
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public int getSlotCount() {
+        return slots == null ? 0 : slots.length;
+    }
+
+    @Override
+    public Object getValue(int slot) {
+        if (slot < 0 || slot >= getSlotCount()) {
+            return super.getValue(slot);
+        }
+        return slots[slot];
+    }
+
+    @Override
+    MessageTemplate messageTemplate() {
+        return template;
+    }
+
+    @Override
+    void format(StringBuilder buffer) {
+        buffer.append(text);
+    }
+
+    @Override
+    String render() {
+        return text;
+    }
+
+}
@@ -0,0 +1,385 @@
+package net.mokatech.exceptioncontext;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Serialized form of a {@link BusinessException}'s context.
+ * <p>Frames are resolved when the exception is serialized : frames rendered from a {@link MessageTemplate} (structured
+ * and annotation-based frames) are written as their key, their pattern and the values of their slots, and the other
+ * ones as their key and rendered message. Keys and patterns are written as objects, so that the stream only sends each
+ * of them once and then refers to it with a back-reference : this acts as a template dictionary, shared by all the
+ * exceptions written to the same stream. Slot values are packed in a compact binary block.
+ * <p>When the exception's cause is also a business exception, the frames shared with the cause's context are not
+ * written : only their number is, and they are taken back from the deserialized cause.
+ * <p>On deserialization, keys and patterns are read eagerly (as the stream requires), but the block of values is kept
+ * as is, and frames are only decoded when the context is first accessed.
+ */
+final class SerializedContext {
+
+    /** Number of slots of the frames written as a plain message */
+    private static final int TEXT_FRAME = 0xFF;
+    private static final int MAX_FRAMES = 0xFFFF;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte STRING = 3;
+    private static final byte ENUM = 4;
+    /** Enum whose {@code toString()} differs from its name */
+    private static final byte RENAMED_ENUM = 5;
+
+    /** Templates compiled on deserialization ; bounded, as patterns come from the stream */
+    private static final ConcurrentMap<String, MessageTemplate> TEMPLATES = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
+    /** Number of bottom frames shared with the cause's context */
+    private final int baseDepth;
+    private final String[] keys;
+    /** The pattern of each frame, or its rendered message for text frames */
+    private final String[] texts;
+    private final byte[] values;
+
+    private SerializedContext(int baseDepth, String[] keys, String[] texts, byte[] values) {
+        this.baseDepth = baseDepth;
+        this.keys = keys;
+        this.texts = texts;
+        this.values = values;
+    }
+
+    /**
+     * Write the given context
+     * @param out The stream
+     * @param snapshot The context
+     * @param base The cause's context, or {@code null} if the cause is not a business exception
+     * @throws IOException if the stream throws one
+     */
+    static void write(ObjectOutputStream out, BusinessContextSnapshot snapshot, BusinessContextSnapshot base) throws IOException {
+        int baseDepth = base == null ? 0 : snapshot.sharedDepth(base);
+        if (snapshot.depth() - baseDepth > MAX_FRAMES) {
+            // The topmost frames are kept, so the bottom ones cannot be shared
+            baseDepth = 0;
+        }
+        ContextFrame[] frames = snapshot.toArray();
+        int count = Math.min(frames.length - baseDepth, MAX_FRAMES);
+        String[] keys = new String[count];
+        String[] texts = new String[count];
+        Encoder encoder = new Encoder();
+        // Keep the topmost frames if there are too many of them
+        for (int i = 0; i < count; i++) {
+            ContextFrame frame = frames[frames.length - count + i];
+            keys[i] = frame.getKey();
+            MessageTemplate template = frame.messageTemplate();
+            if (template == null || frame.getSlotCount() >= TEXT_FRAME) {
+                texts[i] = frame.get();
+                encoder.writeByte(TEXT_FRAME);
+            } else {
+                texts[i] = template.getPattern();
+                encoder.writeByte(frame.getSlotCount());
+                for (int slot = 0; slot < frame.getSlotCount(); slot++) {
+                    encoder.writeValue(frame.getValue(slot));
+                }
+            }
+        }
+        new SerializedContext(baseDepth, keys, texts, encoder.toByteArray()).writeTo(out);
+    }
+
+    /**
+     * Write this context again, without decoding it
+     * @param out The stream
+     * @throws IOException if the stream throws one
+     */
+    void writeTo(ObjectOutputStream out) throws IOException {
+        out.writeInt(baseDepth);
+        out.writeShort(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeObject(keys[i]);
+            out.writeObject(texts[i]);
+        }
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    /**
+     * Read a context, without decoding its frames
+     * @param in The stream
+     * @return The serialized context
+     * @throws IOException if the stream throws one, or is corrupted
+     * @throws ClassNotFoundException never, as only strings are read
+     */
+    static SerializedContext read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        int baseDepth = in.readInt();
+        if (baseDepth < 0) {
+            throw new InvalidObjectException("Invalid context base depth : " + baseDepth);
+        }
+        int count = in.readUnsignedShort();
+        String[] keys = new String[count];
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = readString(in);
+            texts[i] = readString(in);
+            if (texts[i] == null) {
+                throw new InvalidObjectException("Missing frame pattern");
+            }
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new InvalidObjectException("Invalid context length : " + length);
+        }
+        byte[] values = new byte[length];
+        in.readFully(values);
+        return new SerializedContext(baseDepth, keys, texts, values);
+    }
+
+    private static String readString(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Object value = in.readObject();
+        if (value != null && !(value instanceof String)) {
+            throw new InvalidObjectException("Unexpected context element : " + value.getClass().getName());
+        }
+        return (String) value;
+    }
+
+    /**
+     * Decode the frames
+     * @param base The deserialized cause's context, or {@code null} if the cause is not a business exception
+     * @return The context
+     * @throws IllegalStateException if the serialized context is corrupted
+     */
+    BusinessContextSnapshot decode(BusinessContextSnapshot base) {
+        BusinessContextSnapshot snapshot = BusinessContextSnapshot.EMPTY;
+        if (baseDepth > 0) {
+            if (base == null || base.depth() < baseDepth) {
+                throw new IllegalStateException("Corrupted business context : the cause's context is missing");
+            }
+            snapshot = base.ancestor(baseDepth);
+        }
+        Decoder decoder = new Decoder(values);
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                int slotCount = decoder.readByte() & 0xFF;
+                if (slotCount == TEXT_FRAME) {
+                    snapshot = snapshot.push(new DeserializedFrame(keys[i], texts[i]));
+                } else {
+                    Object[] slots = new Object[slotCount];
+                    String[] enumNames = null;
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        byte tag = decoder.readByte();
+                        if (tag == ENUM || tag == RENAMED_ENUM) {
+                            if (enumNames == null) {
+                                enumNames = new String[slotCount];
+                            }
+                            enumNames[slot] = decoder.readString();
+                            slots[slot] = tag == ENUM ? enumNames[slot] : decoder.readString();
+                        } else {
+                            slots[slot] = decoder.readValue(tag);
+                        }
+                    }
+                    snapshot = snapshot.push(new DeserializedFrame(keys[i], template(texts[i]), slots, enumNames));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IllegalStateException("Corrupted business context", e);
+        }
+        return snapshot;
+    }
+
+    private static MessageTemplate template(String pattern) {
+        MessageTemplate template = TEMPLATES.get(pattern);
+        if (template == null) {
+            template = MessageTemplate.compile(pattern);
+            if (TEMPLATES.size() < MAX_CACHED_TEMPLATES) {
+                TEMPLATES.putIfAbsent(pattern, template);
+            }
+        }
+        return template;
+    }
+
+    /** Growable buffer, encoding integers as variable-length quantities */
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[64];
+        private int length;
+
+        void writeByte(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            // Zigzag encoding, so that small negative values are short as well
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                writeByte((int) (zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            writeByte((int) zigzag);
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(encoded.length);
+            for (byte b : encoded) {
+                writeByte(b);
+            }
+        }
+
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeVarLong((Long) value);
+            } else if (value instanceof Integer) {
+                writeByte(INT);
+                writeVarLong((Integer) value);
+            } else if (value instanceof Enum) {
+                String name = ((Enum<?>) value).name();
+                String text = value.toString();
+                if (name.equals(text)) {
+                    writeByte(ENUM);
+                    writeString(name);
+                } else {
+                    writeByte(RENAMED_ENUM);
+                    writeString(name);
+                    writeString(text);
+                }
+            } else {
+                writeByte(STRING);
+                writeString(String.valueOf(value));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte readByte() {
+            return bytes[position++];
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Invalid string length : " + length);
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Object readValue(byte tag) {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case LONG:
+                    return readVarLong();
+                case INT:
+                    return (int) readVarLong();
+                case STRING:
+                    return readString();
+                default:
+                    throw new IllegalArgumentException("Unknown value type : " + tag);
+            }
+        }
+    }
+
+    /** Frame decoded from a serialized context ; enum values are kept as strings, along with their name */
+    private static final class DeserializedFrame extends ContextFrame {
+
+        private final String key;
+        private final MessageTemplate template;
+        private final String text;
+        private final Object[] slots;
+        private final String[] enumNames;
+
+        /** Frame rendered from a template */
+        DeserializedFrame(String key, MessageTemplate template, Object[] slots, String[] enumNames) {
+            this.key = key;
+            this.template = template;
+            this.text = null;
+            this.slots = slots;
+            this.enumNames = enumNames;
+        }
+
+        /** Frame rendered as a plain message */
+        DeserializedFrame(String key, String text) {
+            this.key = key;
+            this.template = null;
+            this.text = text;
+            this.slots = null;
+            this.enumNames = null;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public int getSlotCount() {
+            return slots == null ? 0 : slots.length;
+        }
+
+        @Override
+        public Object getValue(int slot) {
+            if (slot < 0 || slot >= getSlotCount()) {
+                return super.getValue(slot);
+            }
+            return slots[slot];
+        }
+
+        @Override
+        public <E extends Enum<E>> E getEnum(int slot, Class<E> enumType) {
+            Object value = getValue(slot);
+            if (enumNames == null || enumNames[slot] == null) {
+                return enumType.cast(value);
+            }
+            return Enum.valueOf(enumType, enumNames[slot]);
+        }
+
+        @Override
+        MessageTemplate messageTemplate() {
+            return template;
+        }
+
+        @Override
+        void format(StringBuilder buffer) {
+            if (template == null) {
+                buffer.append(text);
+            } else {
+                template.formatTo(buffer, slots);
+            }
+        }
+    }
+
+}
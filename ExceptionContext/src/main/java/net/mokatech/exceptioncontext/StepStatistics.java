@@ -0,0 +1,93 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Immutable statistics of a business step, as exported by the {@link BusinessContextProfiler}.
+ * <p>Percentiles are approximated from the histogram's buckets, and are precise to about 12%.
+ */
+public final class StepStatistics implements Comparable<StepStatistics> {
+
+    /** Separator between the keys of the path, when rendered */
+    public static final String PATH_SEPARATOR = " > ";
+
+    private final List<String> path;
+    private final long count;
+    private final long totalNanos;
+    private final long medianNanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    StepStatistics(List<String> path, long count, long totalNanos, long medianNanos, long p99Nanos, long maxNanos) {
+        this.path = Collections.unmodifiableList(path);
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.medianNanos = medianNanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /** @return The keys of the frames leading to this step, from the bottom of the stack to the step itself */
+    public List<String> getPath() {
+        return path;
+    }
+
+    /** @return The key of the step's own frame */
+    public String getKey() {
+        return path.get(path.size() - 1);
+    }
+
+    /** @return The number of times the step was measured */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return The cumulated duration of the step, in nanoseconds */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /** @return The mean duration of the step, in nanoseconds */
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /** @return The median duration of the step, in nanoseconds */
+    public long getMedianNanos() {
+        return medianNanos;
+    }
+
+    /** @return The 99th percentile of the step's duration, in nanoseconds */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /** @return The longest duration of the step, in nanoseconds */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public int compareTo(StepStatistics other) {
+        for (int i = 0; i < Math.min(path.size(), other.path.size()); i++) {
+            int comparison = path.get(i).compareTo(other.path.get(i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(path.size(), other.path.size());
+    }
+
+    @Override
+    public String toString() {
+        return String.join(PATH_SEPARATOR, path)
+                + " : count=" + count
+                + ", mean=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos()) + "us"
+                + ", p50=" + TimeUnit.NANOSECONDS.toMicros(medianNanos) + "us"
+                + ", p99=" + TimeUnit.NANOSECONDS.toMicros(p99Nanos) + "us"
+                + ", max=" + TimeUnit.NANOSECONDS.toMicros(maxNanos) + "us";
+    }
+
+}
@@ -0,0 +1,102 @@
+package net.mokatech.exceptioncontext;
+
+/**
+ * <p>Frame built from a {@link FrameTemplate}, storing its numeric slots as primitives.
+ * <p>Frames are immutable, and only rendered when needed.
+ */
+public final class StructuredFrame extends ContextFrame {
+
+    private final FrameTemplate template;
+    private final long n0;
+    private final long n1;
+    private final Object r0;
+    private final Object r1;
+
+    StructuredFrame(FrameTemplate template, long n0, long n1, Object r0, Object r1) {
+        this.template = template;
+        this.n0 = n0;
+        this.n1 = n1;
+        this.r0 = r0;
+        this.r1 = r1;
+    }
+
+    /** @return The template this frame was built from */
+    public FrameTemplate getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String getKey() {
+        return template.getKey();
+    }
+
+    @Override
+    public int getSlotCount() {
+        return template.getSlotCount();
+    }
+
+    @Override
+    public Object getValue(int slot) {
+        switch (slotType(slot)) {
+            case LONG:
+                return numeric(slot);
+            case INT:
+                return (int) numeric(slot);
+            default:
+                return reference(slot);
+        }
+    }
+
+    @Override
+    public long getLong(int slot) {
+        if (!slotType(slot).isNumeric()) {
+            throw new ClassCastException("Slot " + slot + " of frame " + getKey() + " is not numeric");
+        }
+        return numeric(slot);
+    }
+
+    @Override
+    MessageTemplate messageTemplate() {
+        return template.messageTemplate();
+    }
+
+    @Override
+    void format(StringBuilder buffer) {
+        template.render(this, buffer);
+    }
+
+    @Override
+    ContextFrame resolve() {
+        Object resolved0 = ResolvedFrame.immutableValue(r0);
+        Object resolved1 = ResolvedFrame.immutableValue(r1);
+        if (resolved0 == r0 && resolved1 == r1) {
+            return this;
+        }
+        return new StructuredFrame(template, n0, n1, resolved0, resolved1);
+    }
+
+    /** Append the given slot's value to the buffer, without boxing it */
+    void appendSlot(int slot, StringBuilder buffer) {
+        if (slotType(slot).isNumeric()) {
+            buffer.append(numeric(slot));
+        } else {
+            buffer.append(reference(slot));
+        }
+    }
+
+    private FrameTemplate.SlotType slotType(int slot) {
+        if (slot < 0 || slot >= template.getSlotCount()) {
+            throw new IndexOutOfBoundsException("No slot " + slot + " in frame " + getKey());
+        }
+        return template.getSlotType(slot);
+    }
+
+    private long numeric(int slot) {
+        return template.storageIndex(slot) == 0 ? n0 : n1;
+    }
+
+    private Object reference(int slot) {
+        return template.storageIndex(slot) == 0 ? r0 : r1;
+    }
+
+}
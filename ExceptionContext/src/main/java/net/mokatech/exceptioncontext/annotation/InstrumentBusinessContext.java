@@ -0,0 +1,20 @@
+package net.mokatech.exceptioncontext.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Asks the {@code BusinessContextProcessor} annotation processor to generate, at compile time, a subclass of the
+ * annotated class managing the business context of its {@link InBusinessContext} and {@link ResetBusinessContext}
+ * methods, without requiring AspectJ.
+ * <p>The generated class is named {@code BusinessContextAware<ClassName>}, and must be instantiated instead of the
+ * annotated class. Like any proxy, it can only instrument methods that can be overridden (ie. neither private, static
+ * nor final), and only when they are called through the generated instance.
+ * <p>Classes bearing this annotation are ignored by the {@code BusinessContextAspect}.
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InstrumentBusinessContext {
+}
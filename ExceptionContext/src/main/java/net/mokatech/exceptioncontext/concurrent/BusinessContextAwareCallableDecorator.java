@@ -1,7 +1,10 @@
 package net.mokatech.exceptioncontext.concurrent;
 
 import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.function.Supplier;
@@ -14,25 +17,38 @@ import java.util.function.Supplier;
 public class BusinessContextAwareCallableDecorator<V> implements Callable<V> {
 
     private final Callable<V> delegate;
-    private final List<Supplier<String>> newBusinessContext;
+    private final BusinessContextSnapshot newBusinessContext;
 
     public BusinessContextAwareCallableDecorator(Callable<V> delegate) {
-        this(delegate, BusinessContext.get());
+        this(delegate, BusinessContext.snapshot());
     }
 
     public BusinessContextAwareCallableDecorator(Callable<V> delegate, List<Supplier<String>> newBusinessContext) {
+        this(delegate, BusinessContextSnapshot.of(newBusinessContext));
+    }
+
+    public BusinessContextAwareCallableDecorator(Callable<V> delegate, BusinessContextSnapshot newBusinessContext) {
         this.delegate = delegate;
         this.newBusinessContext = newBusinessContext;
     }
 
     @Override
     public V call() throws Exception {
-        List<Supplier<String>> originalBusinessContext = BusinessContext.get();
-        BusinessContext.set(newBusinessContext);
-        try {
-            return delegate.call();
-        } finally {
-            BusinessContext.set(originalBusinessContext);
+        return BusinessContext.callWith(newBusinessContext, delegate);
+    }
+
+    /**
+     * Wrap all the given tasks with the same business context
+     * @param tasks The tasks to wrap
+     * @param newBusinessContext The business context to use while calling the tasks
+     * @param <T> The tasks' return type
+     * @return The wrapped tasks
+     */
+    static <T> List<Callable<T>> decorateAll(Collection<? extends Callable<T>> tasks, BusinessContextSnapshot newBusinessContext) {
+        List<Callable<T>> decoratedTasks = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            decoratedTasks.add(new BusinessContextAwareCallableDecorator<>(task, newBusinessContext));
         }
+        return decoratedTasks;
     }
 }
@@ -1,22 +1,91 @@
 package net.mokatech.exceptioncontext.concurrent;
 
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextMetrics;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 /**
  * <p>Decorator that wraps the {@code Runnable}s and {@code Callable}s passed to the given {@code ExecutorService} in
  * business context-aware decorators (resp. in {@link BusinessContextAwareRunnableDecorator}s and
  * {@link BusinessContextAwareCallableDecorator}s).
+ * <p>The business context is captured once per submission : all the tasks of an {@code invokeAll()} or
+ * {@code invokeAny()} batch share the same immutable snapshot. Tasks submitted with an empty context are wrapped too,
+ * so that they run with an empty context even if the pool's thread holds a stale one (inherited from the thread that
+ * created it with the {@code InheritableThreadLocal} strategy, or leaked by a previous task).
+ * <p>{@link #BusinessContextAwareExecutorServiceDecorator(ExecutorService, boolean)} can skip wrapping those tasks,
+ * which is only safe when the pool's threads never hold any context of their own : the context is not inherited, and
+ * all their tasks are submitted through this decorator and never leak frames.
  * <p>All methods are simply delegated to the underlying {@code ExecutorService}.
  */
 public class BusinessContextAwareExecutorServiceDecorator implements ExecutorService {
 
     private final ExecutorService delegate;
+    private final boolean wrapEmptyContexts;
 
     public BusinessContextAwareExecutorServiceDecorator(ExecutorService delegate) {
+        this(delegate, true);
+    }
+
+    /**
+     * @param delegate The decorated {@code ExecutorService}
+     * @param wrapEmptyContexts Whether tasks submitted with an empty context must still be wrapped, so that they
+     * always run with an empty context, even if the pool's threads hold some context of their own (default)
+     */
+    public BusinessContextAwareExecutorServiceDecorator(ExecutorService delegate, boolean wrapEmptyContexts) {
         this.delegate = delegate;
+        this.wrapEmptyContexts = wrapEmptyContexts;
+    }
+
+    /**
+     * Wrap the given task with the current business context, if needed
+     * @param task The task to wrap
+     * @return The wrapped task
+     */
+    protected Runnable decorate(Runnable task) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        if (snapshot.isEmpty() && !wrapEmptyContexts) {
+            BusinessContextMetrics.recordTasks(1, false);
+            return task;
+        }
+        BusinessContextMetrics.recordTasks(1, true);
+        return new BusinessContextAwareRunnableDecorator(task, snapshot);
+    }
+
+    /**
+     * Wrap the given task with the current business context, if needed
+     * @param task The task to wrap
+     * @param <T> The task's return type
+     * @return The wrapped task
+     */
+    protected <T> Callable<T> decorate(Callable<T> task) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        if (snapshot.isEmpty() && !wrapEmptyContexts) {
+            BusinessContextMetrics.recordTasks(1, false);
+            return task;
+        }
+        BusinessContextMetrics.recordTasks(1, true);
+        return new BusinessContextAwareCallableDecorator<>(task, snapshot);
+    }
+
+    /**
+     * Wrap the given tasks with the current business context, if needed. The context is captured only once for the
+     * whole batch.
+     * @param tasks The tasks to wrap
+     * @param <T> The tasks' return type
+     * @return The wrapped tasks
+     */
+    protected <T> Collection<? extends Callable<T>> decorate(Collection<? extends Callable<T>> tasks) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        if (snapshot.isEmpty() && !wrapEmptyContexts) {
+            BusinessContextMetrics.recordTasks(tasks.size(), false);
+            return tasks;
+        }
+        BusinessContextMetrics.recordTasks(tasks.size(), true);
+        return BusinessContextAwareCallableDecorator.decorateAll(tasks, snapshot);
     }
 
     @Override
@@ -46,45 +115,41 @@ public class BusinessContextAwareExecutorServiceDecorator implements ExecutorSer
 
     @Override
     public void execute(Runnable command) {
-        delegate.execute(new BusinessContextAwareRunnableDecorator(command));
+        delegate.execute(decorate(command));
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return delegate.submit(new BusinessContextAwareRunnableDecorator(task));
+        return delegate.submit(decorate(task));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return delegate.submit(new BusinessContextAwareRunnableDecorator(task), result);
+        return delegate.submit(decorate(task), result);
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return delegate.submit(new BusinessContextAwareCallableDecorator<>(task));
+        return delegate.submit(decorate(task));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        List<BusinessContextAwareCallableDecorator<T>> decoratedTasks = tasks.stream().map(BusinessContextAwareCallableDecorator::new).collect(Collectors.toList());
-        return delegate.invokeAll(decoratedTasks);
+        return delegate.invokeAll(decorate(tasks));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-        List<BusinessContextAwareCallableDecorator<T>> decoratedTasks = tasks.stream().map(BusinessContextAwareCallableDecorator::new).collect(Collectors.toList());
-        return delegate.invokeAll(decoratedTasks, timeout, unit);
+        return delegate.invokeAll(decorate(tasks), timeout, unit);
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        List<BusinessContextAwareCallableDecorator<T>> decoratedTasks = tasks.stream().map(BusinessContextAwareCallableDecorator::new).collect(Collectors.toList());
-        return delegate.invokeAny(decoratedTasks);
+        return delegate.invokeAny(decorate(tasks));
     }
 
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        List<BusinessContextAwareCallableDecorator<T>> decoratedTasks = tasks.stream().map(BusinessContextAwareCallableDecorator::new).collect(Collectors.toList());
-        return delegate.invokeAny(decoratedTasks, timeout, unit);
+        return delegate.invokeAny(decorate(tasks), timeout, unit);
     }
 }
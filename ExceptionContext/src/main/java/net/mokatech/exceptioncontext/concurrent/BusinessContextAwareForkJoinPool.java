@@ -0,0 +1,122 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * <p>{@code ForkJoinPool} that runs the tasks submitted to it with the business context of the submitting thread.
+ * <p>Subtasks forked from within a task are scheduled directly by the workers, without going through the pool's
+ * public methods : to propagate the context to them, extend {@link BusinessContextAwareRecursiveTask} or
+ * {@link BusinessContextAwareRecursiveAction} instead of {@code RecursiveTask} or {@code RecursiveAction}.
+ * For parallel streams, wrap the stream's lambdas with {@link BusinessContextAwareFunctions}.
+ */
+public class BusinessContextAwareForkJoinPool extends ForkJoinPool {
+
+    public BusinessContextAwareForkJoinPool() {
+        super();
+    }
+
+    public BusinessContextAwareForkJoinPool(int parallelism) {
+        super(parallelism);
+    }
+
+    public BusinessContextAwareForkJoinPool(int parallelism, ForkJoinWorkerThreadFactory factory, Thread.UncaughtExceptionHandler handler, boolean asyncMode) {
+        super(parallelism, factory, handler, asyncMode);
+    }
+
+    @Override
+    public <T> T invoke(ForkJoinTask<T> task) {
+        return super.invoke(new BusinessContextAwareForkJoinTask<>(task));
+    }
+
+    @Override
+    public void execute(ForkJoinTask<?> task) {
+        super.execute(new BusinessContextAwareForkJoinTask<>(task));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        super.execute(new BusinessContextAwareRunnableDecorator(task));
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+        return super.submit(new BusinessContextAwareForkJoinTask<>(task));
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        return super.submit(new BusinessContextAwareCallableDecorator<>(task));
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        return super.submit(new BusinessContextAwareRunnableDecorator(task), result);
+    }
+
+    @Override
+    public ForkJoinTask<?> submit(Runnable task) {
+        return super.submit(new BusinessContextAwareRunnableDecorator(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+        return super.invokeAll(decorate(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        return super.invokeAll(decorate(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        return super.invokeAny(decorate(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return super.invokeAny(decorate(tasks), timeout, unit);
+    }
+
+    private static <T> List<Callable<T>> decorate(Collection<? extends Callable<T>> tasks) {
+        return BusinessContextAwareCallableDecorator.decorateAll(tasks, BusinessContext.snapshot());
+    }
+
+    /**
+     * Runs the given {@code ForkJoinTask} with the business context captured on construction
+     * @param <V> The task's result type
+     */
+    private static final class BusinessContextAwareForkJoinTask<V> extends ForkJoinTask<V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ForkJoinTask<V> delegate;
+        private final transient BusinessContextSnapshot businessContext = BusinessContext.snapshot();
+        private V result;
+
+        BusinessContextAwareForkJoinTask(ForkJoinTask<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public V getRawResult() {
+            return result;
+        }
+
+        @Override
+        protected void setRawResult(V value) {
+            result = value;
+        }
+
+        @Override
+        protected boolean exec() {
+            result = BusinessContextAwareFunctions.callWith(businessContext, delegate::invoke);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>Binds the current business context to functional interfaces, so that they run with it whichever thread ends up
+ * calling them. The context is captured once, when the function is wrapped.
+ * <p>This is typically used for the stages of a {@code CompletableFuture} chain, or for the lambdas of a parallel
+ * stream :
+ * <pre>
+ *     supplyAsync(() -&gt; loadOrder(42))
+ *         .thenApplyAsync(function(order -&gt; computePayment(order)))
+ *         .thenAcceptAsync(consumer(payment -&gt; pay(payment)));
+ * </pre>
+ */
+public final class BusinessContextAwareFunctions {
+
+    private BusinessContextAwareFunctions() {
+    }
+
+    public static Runnable runnable(Runnable delegate) {
+        return new BusinessContextAwareRunnableDecorator(delegate);
+    }
+
+    public static <T> Supplier<T> supplier(Supplier<T> delegate) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return () -> callWith(snapshot, delegate);
+    }
+
+    public static <T, R> Function<T, R> function(Function<T, R> delegate) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return t -> callWith(snapshot, () -> delegate.apply(t));
+    }
+
+    public static <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> delegate) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return (t, u) -> callWith(snapshot, () -> delegate.apply(t, u));
+    }
+
+    public static <T> Consumer<T> consumer(Consumer<T> delegate) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return t -> BusinessContext.runWith(snapshot, () -> delegate.accept(t));
+    }
+
+    public static <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> delegate) {
+        BusinessContextSnapshot snapshot = BusinessContext.snapshot();
+        return (t, u) -> BusinessContext.runWith(snapshot, () -> delegate.accept(t, u));
+    }
+
+    /**
+     * Call the given task with the given context, through
+     * {@link BusinessContext#callWith(BusinessContextSnapshot, Callable)}, so that the holder strategy can bind a scope
+     * of its own
+     * @param snapshot The context to use while calling the task
+     * @param task The task to call
+     * @param <R> The task's return type
+     * @return The task's result
+     */
+    static <R> R callWith(BusinessContextSnapshot snapshot, Supplier<R> task) {
+        try {
+            return BusinessContext.callWith(snapshot, task::get);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Only reachable if the task sneakily throws a checked exception
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /** Business context-aware equivalent of {@link CompletableFuture#supplyAsync(Supplier)} */
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier) {
+        return CompletableFuture.supplyAsync(supplier(supplier));
+    }
+
+    /** Business context-aware equivalent of {@link CompletableFuture#supplyAsync(Supplier, Executor)} */
+    public static <U> CompletableFuture<U> supplyAsync(Supplier<U> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(supplier(supplier), executor);
+    }
+
+    /** Business context-aware equivalent of {@link CompletableFuture#runAsync(Runnable)} */
+    public static CompletableFuture<Void> runAsync(Runnable runnable) {
+        return CompletableFuture.runAsync(runnable(runnable));
+    }
+
+    /** Business context-aware equivalent of {@link CompletableFuture#runAsync(Runnable, Executor)} */
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(runnable(runnable), executor);
+    }
+
+}
@@ -0,0 +1,39 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Business context-aware equivalent of {@link RecursiveAction}.
+ * <p>The business context is captured when the task is created (ie. in the parent task, for subtasks), and restored
+ * while {@link #compute()} runs, whichever worker thread ends up executing it.
+ */
+public abstract class BusinessContextAwareRecursiveAction extends ForkJoinTask<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient BusinessContextSnapshot businessContext = BusinessContext.snapshot();
+
+    /**
+     * The main computation performed by this task
+     */
+    protected abstract void compute();
+
+    @Override
+    public final Void getRawResult() {
+        return null;
+    }
+
+    @Override
+    protected final void setRawResult(Void value) {
+    }
+
+    @Override
+    protected final boolean exec() {
+        BusinessContext.runWith(businessContext, this::compute);
+        return true;
+    }
+}
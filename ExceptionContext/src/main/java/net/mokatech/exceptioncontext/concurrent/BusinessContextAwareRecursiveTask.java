@@ -0,0 +1,43 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Business context-aware equivalent of {@link RecursiveTask}.
+ * <p>The business context is captured when the task is created (ie. in the parent task, for subtasks), and restored
+ * while {@link #compute()} runs, whichever worker thread ends up executing it.
+ * @param <V> The task's result type
+ */
+public abstract class BusinessContextAwareRecursiveTask<V> extends ForkJoinTask<V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient BusinessContextSnapshot businessContext = BusinessContext.snapshot();
+    private V result;
+
+    /**
+     * The main computation performed by this task
+     * @return The result of the computation
+     */
+    protected abstract V compute();
+
+    @Override
+    public final V getRawResult() {
+        return result;
+    }
+
+    @Override
+    protected final void setRawResult(V value) {
+        result = value;
+    }
+
+    @Override
+    protected final boolean exec() {
+        result = BusinessContextAwareFunctions.callWith(businessContext, this::compute);
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package net.mokatech.exceptioncontext.concurrent;
 
 import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
 
 import java.util.List;
 import java.util.function.Supplier;
@@ -12,25 +13,23 @@ import java.util.function.Supplier;
 public class BusinessContextAwareRunnableDecorator implements Runnable {
 
     private final Runnable delegate;
-    private final List<Supplier<String>> newBusinessContext;
+    private final BusinessContextSnapshot newBusinessContext;
 
     public BusinessContextAwareRunnableDecorator(Runnable delegate) {
-        this(delegate, BusinessContext.get());
+        this(delegate, BusinessContext.snapshot());
     }
 
     public BusinessContextAwareRunnableDecorator(Runnable delegate, List<Supplier<String>> newBusinessContext) {
+        this(delegate, BusinessContextSnapshot.of(newBusinessContext));
+    }
+
+    public BusinessContextAwareRunnableDecorator(Runnable delegate, BusinessContextSnapshot newBusinessContext) {
         this.delegate = delegate;
         this.newBusinessContext = newBusinessContext;
     }
 
     @Override
     public void run() {
-        List<Supplier<String>> originalBusinessContext = BusinessContext.get();
-        BusinessContext.set(newBusinessContext);
-        try {
-            delegate.run();
-        } finally {
-            BusinessContext.set(originalBusinessContext);
-        }
+        BusinessContext.runWith(newBusinessContext, delegate);
     }
 }
@@ -0,0 +1,46 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Decorator that wraps the {@code Runnable}s and {@code Callable}s passed to the given
+ * {@code ScheduledExecutorService} in business context-aware decorators.
+ * <p>The business context is captured once, when the task is scheduled ; repeating tasks restore that same context
+ * before each execution.
+ */
+public class BusinessContextAwareScheduledExecutorServiceDecorator extends BusinessContextAwareExecutorServiceDecorator implements ScheduledExecutorService {
+
+    private final ScheduledExecutorService delegate;
+
+    public BusinessContextAwareScheduledExecutorServiceDecorator(ScheduledExecutorService delegate) {
+        this(delegate, true);
+    }
+
+    public BusinessContextAwareScheduledExecutorServiceDecorator(ScheduledExecutorService delegate, boolean wrapEmptyContexts) {
+        super(delegate, wrapEmptyContexts);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return delegate.schedule(decorate(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return delegate.schedule(decorate(callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return delegate.scheduleAtFixedRate(decorate(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return delegate.scheduleWithFixedDelay(decorate(command), initialDelay, delay, unit);
+    }
+}
@@ -0,0 +1,66 @@
+package net.mokatech.exceptioncontext.holder;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <p>Strategy storing the current {@link BusinessContext}, loosely inspired from Spring Security's
+ * {@code SecurityContextHolderStrategy}.
+ * <p>Implementations only store the current {@link BusinessContextSnapshot} ; as snapshots are immutable, they never
+ * have to copy it.
+ */
+public interface BusinessContextHolderStrategy {
+
+    /**
+     * Get the current context
+     * @return The current context [not null]
+     */
+    BusinessContextSnapshot getContext();
+
+    /**
+     * Replace the current context
+     * @param context The new context [not null]
+     */
+    void setContext(BusinessContextSnapshot context);
+
+    /**
+     * Reset the current context to {@link BusinessContextSnapshot#EMPTY}
+     */
+    void clearContext();
+
+    /**
+     * Run the given task with the given context, and then restore the previous one
+     * @param context The context to use while running the task [not null]
+     * @param task The task to run
+     */
+    default void runWithContext(BusinessContextSnapshot context, Runnable task) {
+        BusinessContextSnapshot previous = getContext();
+        setContext(context);
+        try {
+            task.run();
+        } finally {
+            setContext(previous);
+        }
+    }
+
+    /**
+     * Call the given task with the given context, and then restore the previous one
+     * @param context The context to use while calling the task [not null]
+     * @param task The task to call
+     * @param <V> The task's return type
+     * @return The task's result
+     * @throws Exception Exception thrown by the task
+     */
+    default <V> V callWithContext(BusinessContextSnapshot context, Callable<V> task) throws Exception {
+        BusinessContextSnapshot previous = getContext();
+        setContext(context);
+        try {
+            return task.call();
+        } finally {
+            setContext(previous);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package net.mokatech.exceptioncontext.holder;
+
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+/**
+ * <p>Stores the context in an {@code InheritableThreadLocal}, so that threads created with {@code new Thread(...)}
+ * start with their parent's context, without having to use a {@code BusinessContextAwareRunnableDecorator}.
+ * <p>Snapshots being immutable, the child thread simply shares its parent's snapshot at creation time. Beware that
+ * pooled threads keep the context of the thread that created them, so executors should still be decorated.
+ */
+public final class InheritableThreadLocalBusinessContextHolderStrategy implements BusinessContextHolderStrategy {
+
+    private static final ThreadLocal<BusinessContextSnapshot> CONTEXT = new InheritableThreadLocal<BusinessContextSnapshot>() {
+        @Override
+        protected BusinessContextSnapshot initialValue() {
+            return BusinessContextSnapshot.EMPTY;
+        }
+    };
+
+    @Override
+    public BusinessContextSnapshot getContext() {
+        return CONTEXT.get();
+    }
+
+    @Override
+    public void setContext(BusinessContextSnapshot context) {
+        CONTEXT.set(context);
+    }
+
+    @Override
+    public void clearContext() {
+        CONTEXT.set(BusinessContextSnapshot.EMPTY);
+    }
+
+}
@@ -0,0 +1,27 @@
+package net.mokatech.exceptioncontext.holder;
+
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+/**
+ * Stores the context in a {@code ThreadLocal}. This is the default strategy.
+ */
+public final class ThreadLocalBusinessContextHolderStrategy implements BusinessContextHolderStrategy {
+
+    private static final ThreadLocal<BusinessContextSnapshot> CONTEXT = ThreadLocal.withInitial(() -> BusinessContextSnapshot.EMPTY);
+
+    @Override
+    public BusinessContextSnapshot getContext() {
+        return CONTEXT.get();
+    }
+
+    @Override
+    public void setContext(BusinessContextSnapshot context) {
+        CONTEXT.set(context);
+    }
+
+    @Override
+    public void clearContext() {
+        CONTEXT.set(BusinessContextSnapshot.EMPTY);
+    }
+
+}
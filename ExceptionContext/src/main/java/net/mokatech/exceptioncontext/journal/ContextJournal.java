@@ -0,0 +1,156 @@
+package net.mokatech.exceptioncontext.journal;
+
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.ContextFrame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Fixed-size journal of {@link BusinessException}s, stored in a memory-mapped ring file.
+ * <p>Each exception is written as a compact binary record (see {@link JournalFormat}) directly into the mapped file :
+ * there is no intermediate byte array, and no system call per record. As the mapped pages belong to the operating
+ * system, records written before a JVM crash can still be read afterwards with a {@link ContextJournalReader}.
+ * <p>The file is split in fixed-size slots, used as a ring : once all the slots have been written, the oldest records
+ * are overwritten. Records too long for a slot are truncated. Concurrent writers claim distinct slots with a single
+ * atomic increment, and never block each other.
+ */
+public class ContextJournal implements AutoCloseable {
+
+    public static final int DEFAULT_SLOT_COUNT = 16 * 1024;
+    public static final int DEFAULT_SLOT_SIZE = 512;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int slotSize;
+    private final AtomicLong sequence;
+
+    private ContextJournal(FileChannel channel, MappedByteBuffer buffer, int slotCount, int slotSize, long nextSequence) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.sequence = new AtomicLong(nextSequence);
+    }
+
+    /**
+     * Open the given journal with the default size, creating it if needed
+     * @param file The journal file [not null]
+     * @return The journal
+     * @throws IOException if the file cannot be mapped, or is not a journal with the same geometry
+     */
+    public static ContextJournal open(Path file) throws IOException {
+        return open(file, DEFAULT_SLOT_COUNT, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * Open the given journal, creating it if needed. New records are appended after the existing ones.
+     * @param file The journal file [not null]
+     * @param slotCount The number of records kept in the ring
+     * @param slotSize The maximum size of a record, in bytes
+     * @return The journal
+     * @throws IOException if the file cannot be mapped, or is not a journal with the same geometry
+     */
+    public static ContextJournal open(Path file, int slotCount, int slotSize) throws IOException {
+        Objects.requireNonNull(file, "The file must not be null.");
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("Invalid slot count : " + slotCount);
+        }
+        if (slotSize < JournalFormat.MIN_SLOT_SIZE) {
+            throw new IllegalArgumentException("Invalid slot size : " + slotSize);
+        }
+        long size = JournalFormat.HEADER_SIZE + (long) slotCount * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The journal cannot be larger than 2GB.");
+        }
+        boolean existing = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (existing && channel.size() != size) {
+                throw new IOException("The journal " + file + " does not have the expected size.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            long nextSequence = 0;
+            if (existing) {
+                JournalFormat.checkHeader(buffer, file, slotCount, slotSize);
+                nextSequence = JournalFormat.lastSequence(buffer, slotCount, slotSize) + 1;
+            } else {
+                JournalFormat.writeHeader(buffer, slotCount, slotSize);
+            }
+            return new ContextJournal(channel, buffer, slotCount, slotSize, nextSequence);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append the given exception to the journal, with its class, message, and the key and rendering of each frame
+     * @param exception The exception [not null]
+     */
+    public void append(BusinessException exception) {
+        Objects.requireNonNull(exception, "The exception must not be null.");
+        long recordSequence = sequence.getAndIncrement();
+        int start = JournalFormat.HEADER_SIZE + (int) (recordSequence % slotCount) * slotSize;
+        int end = start + slotSize;
+        // Invalidate the slot first, so that a crash in the middle of the copy leaves no half-written record
+        buffer.putInt(start, 0);
+        int position = start + JournalFormat.RECORD_HEADER_SIZE;
+        // Slots are at least MIN_SLOT_SIZE bytes long, so that there is always room for the lengths of those strings
+        position = JournalFormat.putTruncatedString(buffer, position, end - 4, exception.getClass().getName());
+        position = JournalFormat.putTruncatedString(buffer, position, end - 2, exception.getMessage());
+        ContextFrame[] frames = exception.getContext();
+        int countPosition = position;
+        position += 2;
+        int written = 0;
+        boolean truncated = false;
+        StringBuilder rendered = BUFFER.get();
+        for (ContextFrame frame : frames) {
+            rendered.setLength(0);
+            frame.renderTo(rendered);
+            int next = JournalFormat.putString(buffer, position, end, frame.getKey());
+            next = next < 0 ? next : JournalFormat.putString(buffer, next, end, rendered);
+            if (next < 0) {
+                truncated = true;
+                break;
+            }
+            position = next;
+            written++;
+        }
+        if (rendered.capacity() > 64 * 1024) {
+            BUFFER.remove();
+        }
+        buffer.putShort(countPosition, (short) written);
+        buffer.putLong(start + 4, recordSequence);
+        buffer.putLong(start + 12, System.currentTimeMillis());
+        buffer.put(start + 20, truncated ? JournalFormat.FLAG_TRUNCATED : 0);
+        // Commit the record
+        buffer.putInt(start, position - start);
+    }
+
+    /** Write the mapped pages to the storage device, to survive an operating system crash as well */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
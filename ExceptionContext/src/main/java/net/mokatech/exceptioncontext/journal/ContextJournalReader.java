@@ -0,0 +1,184 @@
+package net.mokatech.exceptioncontext.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * <p>Reads the records of a {@link ContextJournal}, even if the JVM which wrote it crashed. Slots whose record was
+ * being written during the crash are skipped.
+ * <p>Can also be run from the command line :
+ * <pre>java -cp core.jar net.mokatech.exceptioncontext.journal.ContextJournalReader journal.bin [--class name]
+ *     [--frame key-or-text] [--from instant] [--to instant]</pre>
+ * where instants use the ISO-8601 format (eg. {@code 2024-01-31T12:00:00Z}).
+ */
+public final class ContextJournalReader {
+
+    private ContextJournalReader() {
+    }
+
+    /**
+     * Read all the records of the given journal
+     * @param file The journal file [not null]
+     * @return The records, from the oldest to the most recent
+     * @throws IOException if the file cannot be read, or is not a journal
+     */
+    public static List<JournalRecord> read(Path file) throws IOException {
+        return read(file, record -> true);
+    }
+
+    /**
+     * Read the records of the given journal matching the given filter
+     * @param file The journal file [not null]
+     * @param filter The filter [not null]
+     * @return The matching records, from the oldest to the most recent
+     * @throws IOException if the file cannot be read, or is not a journal
+     */
+    public static List<JournalRecord> read(Path file, Predicate<? super JournalRecord> filter) throws IOException {
+        Objects.requireNonNull(file, "The file must not be null.");
+        Objects.requireNonNull(filter, "The filter must not be null.");
+        List<JournalRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            JournalFormat.checkHeader(buffer, file, -1, -1);
+            int slotCount = buffer.getInt(8);
+            int slotSize = buffer.getInt(12);
+            if (JournalFormat.HEADER_SIZE + (long) slotCount * slotSize > buffer.capacity()) {
+                throw new IOException("The journal " + file + " is truncated.");
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                JournalRecord record = readSlot(buffer, JournalFormat.HEADER_SIZE + slot * slotSize, slotSize);
+                if (record != null && filter.test(record)) {
+                    records.add(record);
+                }
+            }
+        }
+        records.sort(Comparator.comparingLong(JournalRecord::getSequence));
+        return records;
+    }
+
+    /** @return The record stored in the given slot, or {@code null} if it is empty or invalid */
+    private static JournalRecord readSlot(MappedByteBuffer buffer, int start, int slotSize) {
+        int length = buffer.getInt(start);
+        if (length < JournalFormat.RECORD_HEADER_SIZE || length > slotSize) {
+            return null;
+        }
+        try {
+            long sequence = buffer.getLong(start + 4);
+            long timestamp = buffer.getLong(start + 12);
+            boolean truncated = (buffer.get(start + 20) & JournalFormat.FLAG_TRUNCATED) != 0;
+            int position = start + JournalFormat.RECORD_HEADER_SIZE;
+            String exceptionClassName = JournalFormat.getString(buffer, position);
+            position += JournalFormat.stringSize(buffer, position);
+            String message = JournalFormat.getString(buffer, position);
+            position += JournalFormat.stringSize(buffer, position);
+            int frameCount = buffer.getShort(position);
+            if (frameCount < 0) {
+                return null;
+            }
+            position += 2;
+            List<String> frameKeys = new ArrayList<>(frameCount);
+            List<String> frames = new ArrayList<>(frameCount);
+            for (int i = 0; i < frameCount; i++) {
+                frameKeys.add(JournalFormat.getString(buffer, position));
+                position += JournalFormat.stringSize(buffer, position);
+                frames.add(JournalFormat.getString(buffer, position));
+                position += JournalFormat.stringSize(buffer, position);
+            }
+            if (position != start + length) {
+                return null;
+            }
+            return new JournalRecord(sequence, timestamp, exceptionClassName, message, frameKeys, frames, truncated);
+        } catch (IndexOutOfBoundsException e) {
+            // Corrupted record
+            return null;
+        }
+    }
+
+    /**
+     * @param exceptionClassName The exception class name
+     * @return A filter accepting the records of the given exception class
+     */
+    public static Predicate<JournalRecord> byClass(String exceptionClassName) {
+        Objects.requireNonNull(exceptionClassName, "The exception class name must not be null.");
+        return record -> exceptionClassName.equals(record.getExceptionClassName());
+    }
+
+    /**
+     * @param frame A frame key, or part of a rendered frame
+     * @return A filter accepting the records having a frame with this key, or whose rendering contains this text
+     */
+    public static Predicate<JournalRecord> byFrame(String frame) {
+        Objects.requireNonNull(frame, "The frame must not be null.");
+        return record -> {
+            if (record.getFrameKeys().contains(frame)) {
+                return true;
+            }
+            for (String rendered : record.getFrames()) {
+                if (rendered != null && rendered.contains(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * @param from The start of the range (inclusive), or {@code null}
+     * @param to The end of the range (exclusive), or {@code null}
+     * @return A filter accepting the records appended during the given time range
+     */
+    public static Predicate<JournalRecord> byTime(Instant from, Instant to) {
+        long fromMillis = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long toMillis = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        return record -> record.getTimestamp() >= fromMillis && record.getTimestamp() < toMillis;
+    }
+
+    /**
+     * Print the records of a journal
+     * @param args The journal file, followed by the optional filters
+     * @throws IOException if the journal cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage : ContextJournalReader <journal file> [--class name] [--frame key-or-text] [--from instant] [--to instant]");
+            System.exit(1);
+        }
+        Predicate<JournalRecord> filter = record -> true;
+        Instant from = null;
+        Instant to = null;
+        for (int i = 1; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--class":
+                    filter = filter.and(byClass(args[i + 1]));
+                    break;
+                case "--frame":
+                    filter = filter.and(byFrame(args[i + 1]));
+                    break;
+                case "--from":
+                    from = Instant.parse(args[i + 1]);
+                    break;
+                case "--to":
+                    to = Instant.parse(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option : " + args[i]);
+                    System.exit(1);
+            }
+        }
+        filter = filter.and(byTime(from, to));
+        for (JournalRecord record : read(Paths.get(args[0]), filter)) {
+            System.out.println(record);
+        }
+    }
+
+}
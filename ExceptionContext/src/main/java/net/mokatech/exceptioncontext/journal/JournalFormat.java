@@ -0,0 +1,180 @@
+package net.mokatech.exceptioncontext.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * <p>Binary format of the {@link ContextJournal} files. All numbers are big-endian.
+ * <p>The file starts with a {@value #HEADER_SIZE}-byte header : magic number, version, slot count and slot size (all
+ * {@code int}s). It is followed by the slots, each holding at most one record :
+ * <ul>
+ *     <li>{@code int} : length of the record, header included ; 0 if the slot is empty or being written ;</li>
+ *     <li>{@code long} : sequence number ; {@code long} : timestamp, in milliseconds since the epoch ;</li>
+ *     <li>{@code byte} : flags ({@link #FLAG_TRUNCATED}) ;</li>
+ *     <li>string : exception class name ; string : message ;</li>
+ *     <li>{@code short} : number of frames, followed by the key and rendering (both strings) of each frame, from the
+ *     bottom of the stack to the top.</li>
+ * </ul>
+ * <p>Strings are stored as their length in bytes (an unsigned {@code short}, {@code 0xFFFF} meaning {@code null}),
+ * followed by their UTF-8 encoding.
+ */
+final class JournalFormat {
+
+    static final int MAGIC = 0x42434A31;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 21;
+    static final int MIN_SLOT_SIZE = 64;
+    static final byte FLAG_TRUNCATED = 1;
+
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int MAX_STRING_LENGTH = 0xFFFE;
+
+    private JournalFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer, int slotCount, int slotSize) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slotCount);
+        buffer.putInt(12, slotSize);
+    }
+
+    static void checkHeader(ByteBuffer buffer, Path file, int slotCount, int slotSize) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a business context journal.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported journal version : " + buffer.getInt(4));
+        }
+        if (slotCount >= 0 && (buffer.getInt(8) != slotCount || buffer.getInt(12) != slotSize)) {
+            throw new IOException("The journal " + file + " has " + buffer.getInt(8) + " slots of " + buffer.getInt(12)
+                    + " bytes, instead of " + slotCount + " slots of " + slotSize + " bytes.");
+        }
+    }
+
+    /** @return The highest sequence number found in the journal, or -1 if it is empty */
+    static long lastSequence(ByteBuffer buffer, int slotCount, int slotSize) {
+        long last = -1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int start = HEADER_SIZE + slot * slotSize;
+            if (buffer.getInt(start) > 0) {
+                last = Math.max(last, buffer.getLong(start + 4));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Write a string at the given position, without any intermediate array
+     * @return The position following the string, or -1 if it does not fit before {@code end}
+     */
+    static int putString(ByteBuffer buffer, int position, int end, CharSequence string) {
+        if (string == null) {
+            if (position + 2 > end) {
+                return -1;
+            }
+            buffer.putShort(position, (short) NULL_LENGTH);
+            return position + 2;
+        }
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            int next = encodedLength(string, i);
+            length += next;
+            if (next == 4) {
+                i++;
+            }
+        }
+        if (length > MAX_STRING_LENGTH || position + 2 + length > end) {
+            return -1;
+        }
+        return putChars(buffer, position, string, string.length(), length);
+    }
+
+    /**
+     * Write as much of a string as fits before {@code end}
+     * @return The position following the string, or -1 if not even its length fits
+     */
+    static int putTruncatedString(ByteBuffer buffer, int position, int end, CharSequence string) {
+        if (string == null || position + 2 > end) {
+            return putString(buffer, position, end, string);
+        }
+        int room = Math.min(end - position - 2, MAX_STRING_LENGTH);
+        int length = 0;
+        int chars = 0;
+        while (chars < string.length()) {
+            int next = encodedLength(string, chars);
+            if (length + next > room) {
+                break;
+            }
+            length += next;
+            chars += next == 4 ? 2 : 1;
+        }
+        return putChars(buffer, position, string, chars, length);
+    }
+
+    private static int putChars(ByteBuffer buffer, int position, CharSequence string, int chars, int length) {
+        buffer.putShort(position, (short) length);
+        int index = position + 2;
+        for (int i = 0; i < chars; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put(index++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(index++, (byte) (0xC0 | c >> 6));
+                buffer.put(index++, (byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put(index++, (byte) (0xF0 | codePoint >> 18));
+                buffer.put(index++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put(index++, (byte) '?');
+            } else {
+                buffer.put(index++, (byte) (0xE0 | c >> 12));
+                buffer.put(index++, (byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+        return index;
+    }
+
+    /** @return The number of bytes encoding the character (or surrogate pair) at the given index */
+    private static int encodedLength(CharSequence string, int i) {
+        char c = string.charAt(i);
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+            return 4;
+        } else if (Character.isSurrogate(c)) {
+            // Unpaired surrogates are replaced with '?'
+            return 1;
+        }
+        return 3;
+    }
+
+    /** @return The string at the given position ; its encoded length can be read with {@link #stringSize} */
+    static String getString(ByteBuffer buffer, int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return The number of bytes used by the string at the given position */
+    static int stringSize(ByteBuffer buffer, int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        return length == NULL_LENGTH ? 2 : 2 + length;
+    }
+
+}
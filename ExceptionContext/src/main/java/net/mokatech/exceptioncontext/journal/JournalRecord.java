@@ -0,0 +1,85 @@
+package net.mokatech.exceptioncontext.journal;
+
+import net.mokatech.exceptioncontext.ContextRenderer;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception read back from a {@link ContextJournal}.
+ */
+public final class JournalRecord {
+
+    private final long sequence;
+    private final long timestamp;
+    private final String exceptionClassName;
+    private final String message;
+    private final List<String> frameKeys;
+    private final List<String> frames;
+    private final boolean truncated;
+
+    JournalRecord(long sequence, long timestamp, String exceptionClassName, String message, List<String> frameKeys,
+                  List<String> frames, boolean truncated) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.exceptionClassName = exceptionClassName;
+        this.message = message;
+        this.frameKeys = Collections.unmodifiableList(frameKeys);
+        this.frames = Collections.unmodifiableList(frames);
+        this.truncated = truncated;
+    }
+
+    /** @return The record's sequence number, increasing with each appended exception */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /** @return The time at which the exception was appended, in milliseconds since the epoch */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** @return The exception's class name */
+    public String getExceptionClassName() {
+        return exceptionClassName;
+    }
+
+    /** @return The exception's message, or {@code null} */
+    public String getMessage() {
+        return message;
+    }
+
+    /** @return The key of each frame, from the bottom of the stack to the top ; {@code null} for legacy frames */
+    public List<String> getFrameKeys() {
+        return frameKeys;
+    }
+
+    /** @return The rendering of each frame, from the bottom of the stack to the top */
+    public List<String> getFrames() {
+        return frames;
+    }
+
+    /** @return {@code true} if some frames did not fit in the journal's slot */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(256);
+        buffer.append('#').append(sequence).append(' ').append(Instant.ofEpochMilli(timestamp)).append(' ')
+                .append(exceptionClassName);
+        if (message != null) {
+            buffer.append(": ").append(message);
+        }
+        for (String frame : frames) {
+            buffer.append(ContextRenderer.DEFAULT_SEPARATOR).append(frame);
+        }
+        if (truncated) {
+            buffer.append(ContextRenderer.DEFAULT_SEPARATOR).append("...");
+        }
+        return buffer.toString();
+    }
+
+}
@@ -0,0 +1,358 @@
+package net.mokatech.exceptioncontext.processor;
+
+import net.mokatech.exceptioncontext.FrameTemplate;
+import net.mokatech.exceptioncontext.FrameTemplate.SlotType;
+import net.mokatech.exceptioncontext.MessageTemplate;
+import net.mokatech.exceptioncontext.annotation.InBusinessContext;
+import net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext;
+import net.mokatech.exceptioncontext.annotation.ResetBusinessContext;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Annotation processor generating, for each class annotated with {@link InstrumentBusinessContext}, a subclass whose
+ * overridden methods manage the business context directly, as the {@code BusinessContextAspect} would :
+ * <pre>
+ *     private static final FrameTemplate TEMPLATE_0 = FrameTemplate.of("Processing order {0}", SlotType.LONG);
+ *
+ *     &#64;Override
+ *     public void process(long orderId) {
+ *         BusinessContext.push(TEMPLATE_0.frame(orderId));
+ *         try {
+ *             super.process(orderId);
+ *         } finally {
+ *             BusinessContext.pop();
+ *         }
+ *     }
+ * </pre>
+ * <p>Templates are validated at compile time. When the placeholders only refer to {@code int}, {@code long},
+ * {@code String} or enum parameters (and to no more of them than a {@link FrameTemplate} can hold), their values are
+ * captured in a structured frame, without boxing ; otherwise, all the arguments are bound to a
+ * {@link MessageTemplate}, like the aspect does.
+ */
+@SupportedAnnotationTypes("net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext")
+public class BusinessContextProcessor extends AbstractProcessor {
+
+    /** Prefix of the generated classes' names */
+    public static final String GENERATED_CLASS_PREFIX = "BusinessContextAware";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(InstrumentBusinessContext.class)) {
+            TypeElement type = (TypeElement) element;
+            if (validateType(type)) {
+                generate(type);
+            }
+        }
+        return true;
+    }
+
+    private boolean validateType(TypeElement type) {
+        Messager messager = processingEnv.getMessager();
+        Set<Modifier> modifiers = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.PRIVATE)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@InstrumentBusinessContext can only be used on non-final, non-private classes", type);
+            return false;
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@InstrumentBusinessContext cannot be used on inner classes", type);
+            return false;
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@InstrumentBusinessContext cannot be used on local classes", type);
+            return false;
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String className = GENERATED_CLASS_PREFIX + nestedName(type);
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        StringBuilder fields = new StringBuilder();
+        StringBuilder members = new StringBuilder();
+        int templateCount = 0;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                appendConstructor(members, className, constructor);
+            }
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            InBusinessContext inBusinessContext = method.getAnnotation(InBusinessContext.class);
+            boolean reset = method.getAnnotation(ResetBusinessContext.class) != null;
+            if (inBusinessContext == null && !reset) {
+                continue;
+            }
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Private, static and final methods cannot be instrumented by the generated subclass", method);
+                continue;
+            }
+            String push = null;
+            if (inBusinessContext != null) {
+                String templateName = "TEMPLATE_" + templateCount++;
+                push = appendTemplate(fields, templateName, inBusinessContext.value(), method);
+                if (push == null) {
+                    continue;
+                }
+            }
+            appendMethod(members, method, reset, push);
+        }
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                if (!packageName.isEmpty()) {
+                    writer.append("package ").append(packageName).append(";\n\n");
+                }
+                writer.append("import net.mokatech.exceptioncontext.BusinessContext;\n")
+                        .append("import net.mokatech.exceptioncontext.FrameTemplate;\n")
+                        .append("import net.mokatech.exceptioncontext.MessageTemplate;\n\n")
+                        .append("/**\n")
+                        .append(" * Business context-aware subclass of {@link ").append(type.getQualifiedName()).append("}.\n")
+                        .append(" * Generated by ").append(BusinessContextProcessor.class.getName()).append(" : do not edit.\n")
+                        .append(" */\n")
+                        .append("public class ").append(className).append(typeParameters(type.getTypeParameters()))
+                        .append(" extends ").append(type.getQualifiedName()).append(typeArguments(type.getTypeParameters()))
+                        .append(" {\n\n")
+                        .append(fields)
+                        .append(fields.length() > 0 ? "\n" : "")
+                        .append(members)
+                        .append("}\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot generate " + qualifiedName + " : " + e, type);
+        }
+    }
+
+    /**
+     * Declare the template of the given method, and build the statement pushing its frame
+     * @return The push statement, or {@code null} if the template is invalid
+     */
+    private String appendTemplate(StringBuilder fields, String templateName, String pattern, ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        int[] argumentIndexes;
+        int slotCount;
+        try {
+            argumentIndexes = MessageTemplate.compile(pattern).getArgumentIndexes();
+            // Also takes the placeholders using format types or styles into account
+            slotCount = new MessageFormat(pattern).getFormatsByArgumentIndex().length;
+        } catch (IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Invalid business context template : " + e.getMessage(), method);
+            return null;
+        }
+        if (slotCount > parameters.size()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "The business context template refers to the parameter {"
+                    + (slotCount - 1) + "}, but the method only has " + parameters.size() + " parameters", method);
+            return null;
+        }
+
+        String literal = javaLiteral(pattern);
+        SlotType[] slotTypes = slotTypes(parameters.subList(0, slotCount));
+        if (argumentIndexes.length > 0 && slotTypes != null && fitsFrameTemplate(pattern, slotTypes)) {
+            fields.append("    private static final FrameTemplate ").append(templateName).append(" = FrameTemplate.of(").append(literal);
+            List<String> numericArguments = new ArrayList<>();
+            List<String> referenceArguments = new ArrayList<>();
+            for (int i = 0; i < slotTypes.length; i++) {
+                fields.append(", FrameTemplate.SlotType.").append(slotTypes[i].name());
+                String name = parameters.get(i).getSimpleName().toString();
+                (slotTypes[i].isNumeric() ? numericArguments : referenceArguments).add(name);
+            }
+            fields.append(");\n");
+            numericArguments.addAll(referenceArguments);
+            return "BusinessContext.push(" + templateName + ".frame(" + String.join(", ", numericArguments) + "));";
+        }
+
+        fields.append("    private static final MessageTemplate ").append(templateName).append(" = MessageTemplate.compile(").append(literal).append(");\n");
+        if (argumentIndexes.length == 0 && fitsFrameTemplate(pattern)) {
+            return "BusinessContext.push(" + templateName + ".bind());";
+        }
+        String arguments = parameters.stream().map(parameter -> parameter.getSimpleName().toString()).collect(Collectors.joining(", "));
+        return "BusinessContext.push(" + templateName + ".bind(new Object[]{" + arguments + "}));";
+    }
+
+    /** @return The slot types of the given parameters, or {@code null} if some of them cannot be stored in a slot */
+    private SlotType[] slotTypes(List<? extends VariableElement> parameters) {
+        SlotType[] slotTypes = new SlotType[parameters.size()];
+        for (int i = 0; i < slotTypes.length; i++) {
+            TypeMirror type = parameters.get(i).asType();
+            if (type.getKind() == TypeKind.INT || type.getKind() == TypeKind.SHORT || type.getKind() == TypeKind.BYTE) {
+                slotTypes[i] = SlotType.INT;
+            } else if (type.getKind() == TypeKind.LONG) {
+                slotTypes[i] = SlotType.LONG;
+            } else if (type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+                slotTypes[i] = SlotType.ENUM;
+            } else if (type.getKind() == TypeKind.DECLARED && type.toString().equals(String.class.getName())) {
+                slotTypes[i] = SlotType.STRING;
+            } else {
+                return null;
+            }
+        }
+        return slotTypes;
+    }
+
+    /** @return {@code true} if the pattern can be compiled into a {@link FrameTemplate} */
+    private static boolean fitsFrameTemplate(String pattern, SlotType... slotTypes) {
+        try {
+            FrameTemplate.of(pattern, slotTypes);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void appendConstructor(StringBuilder members, String className, ExecutableElement constructor) {
+        members.append("    ").append(visibility(constructor)).append(methodTypeParameters(constructor))
+                .append(className).append("(").append(parameters(constructor)).append(")").append(throwsClause(constructor)).append(" {\n")
+                .append("        super(").append(arguments(constructor)).append(");\n")
+                .append("    }\n\n");
+    }
+
+    private void appendMethod(StringBuilder members, ExecutableElement method, boolean reset, String push) {
+        boolean returnsValue = method.getReturnType().getKind() != TypeKind.VOID;
+        String call = (returnsValue ? "return " : "") + "super." + method.getSimpleName() + "(" + arguments(method) + ");";
+        members.append("    @Override\n")
+                .append("    ").append(visibility(method)).append(methodTypeParameters(method))
+                .append(method.getReturnType()).append(" ").append(method.getSimpleName())
+                .append("(").append(parameters(method)).append(")").append(throwsClause(method)).append(" {\n");
+        if (reset) {
+            members.append("        BusinessContext.reset();\n");
+        }
+        if (push == null) {
+            members.append("        ").append(call).append("\n");
+        } else {
+            members.append("        ").append(push).append("\n")
+                    .append("        try {\n")
+                    .append("            ").append(call).append("\n")
+                    .append("        } finally {\n")
+                    .append("            BusinessContext.pop();\n")
+                    .append("        }\n");
+        }
+        members.append("    }\n\n");
+    }
+
+    private static String nestedName(TypeElement type) {
+        Element enclosing = type.getEnclosingElement();
+        if (enclosing instanceof TypeElement) {
+            return nestedName((TypeElement) enclosing) + "_" + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    private static String visibility(ExecutableElement executable) {
+        Set<Modifier> modifiers = executable.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return "public ";
+        }
+        if (modifiers.contains(Modifier.PROTECTED)) {
+            return "protected ";
+        }
+        return "";
+    }
+
+    private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        return typeParameters.stream().map(typeParameter -> {
+            String bounds = typeParameter.getBounds().stream()
+                    .map(TypeMirror::toString)
+                    .filter(bound -> !bound.equals(Object.class.getName()))
+                    .collect(Collectors.joining(" & "));
+            return bounds.isEmpty() ? typeParameter.getSimpleName().toString() : typeParameter.getSimpleName() + " extends " + bounds;
+        }).collect(Collectors.joining(", ", "<", ">"));
+    }
+
+    private static String methodTypeParameters(ExecutableElement executable) {
+        String typeParameters = typeParameters(executable.getTypeParameters());
+        return typeParameters.isEmpty() ? "" : typeParameters + " ";
+    }
+
+    private static String typeArguments(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        return typeParameters.stream().map(typeParameter -> typeParameter.getSimpleName().toString()).collect(Collectors.joining(", ", "<", ">"));
+    }
+
+    private static String parameters(ExecutableElement executable) {
+        List<? extends VariableElement> parameters = executable.getParameters();
+        List<String> declarations = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            String type = parameter.asType().toString();
+            if (executable.isVarArgs() && i == parameters.size() - 1) {
+                type = type.substring(0, type.length() - 2) + "...";
+            }
+            declarations.add("final " + type + " " + parameter.getSimpleName());
+        }
+        return String.join(", ", declarations);
+    }
+
+    private static String arguments(ExecutableElement executable) {
+        return executable.getParameters().stream().map(parameter -> parameter.getSimpleName().toString()).collect(Collectors.joining(", "));
+    }
+
+    private static String throwsClause(ExecutableElement executable) {
+        if (executable.getThrownTypes().isEmpty()) {
+            return "";
+        }
+        return executable.getThrownTypes().stream().map(TypeMirror::toString).collect(Collectors.joining(", ", " throws ", ""));
+    }
+
+    private static String javaLiteral(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+}
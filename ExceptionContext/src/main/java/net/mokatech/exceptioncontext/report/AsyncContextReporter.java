@@ -0,0 +1,234 @@
+package net.mokatech.exceptioncontext.report;
+
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.ContextRenderer;
+
+import java.io.PrintStream;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Asynchronous alternative to {@link BusinessException#printContext(PrintStream, CharSequence)}.
+ * <p>Throwing threads hand their exceptions over to a bounded, lock-free ring buffer, and return immediately. A single
+ * background thread renders them and writes them to the target stream in batches, so that request threads never
+ * contend on the stream's lock, nor pay for rendering the context.
+ * <p>When the buffer is full, the {@link OverflowPolicy} decides what happens to new exceptions ; dropped exceptions are
+ * counted.
+ */
+public class AsyncContextReporter implements AutoCloseable {
+
+    /** What to do with new exceptions when the buffer is full */
+    public enum OverflowPolicy {
+        /** Drop new exceptions while the buffer is full */
+        DROP,
+        /** Make the reporting thread wait until there is room in the buffer */
+        BLOCK,
+        /** Once the buffer is half full, only accept one exception out of {@code sampleRate} ; drop them when full */
+        SAMPLE
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+
+    /** Maximum number of exceptions written at once */
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final PrintStream printer;
+    private final ContextRenderer renderer;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<BusinessException> entries;
+    /** Vyukov-style sequence numbers, telling whether each slot can be written or read */
+    private final AtomicLongArray sequences;
+    /** Next position to write, shared by all producers */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next position to read, only written by the consumer */
+    private volatile long head;
+
+    private final LongAdder reportedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final Thread consumer;
+    private volatile boolean closed;
+    /**
+     * Number of threads between their check of {@link #closed} and the end of their offer : the consumer only stops
+     * once there are none, so that no accepted exception is left unwritten
+     */
+    private final AtomicInteger reporting = new AtomicInteger();
+
+    /**
+     * Create a reporter with the default renderer, capacity, and the {@link OverflowPolicy#DROP} policy
+     * @param printer The target stream
+     */
+    public AsyncContextReporter(PrintStream printer) {
+        this(printer, ContextRenderer.DEFAULT, DEFAULT_CAPACITY, OverflowPolicy.DROP, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param printer The target stream [not null]
+     * @param renderer The renderer [not null]
+     * @param capacity The buffer's capacity, rounded up to a power of two
+     * @param overflowPolicy What to do when the buffer is full [not null]
+     * @param sampleRate With the {@link OverflowPolicy#SAMPLE} policy, one exception out of {@code sampleRate} is
+     * accepted once the buffer is half full
+     */
+    public AsyncContextReporter(PrintStream printer, ContextRenderer renderer, int capacity, OverflowPolicy overflowPolicy, int sampleRate) {
+        this.printer = Objects.requireNonNull(printer, "The printer must not be null.");
+        this.renderer = Objects.requireNonNull(renderer, "The renderer must not be null.");
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "The overflow policy must not be null.");
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity : " + capacity);
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Invalid sample rate : " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.entries = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.consumer = new Thread(this::consume, "business-context-reporter");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Hand the given exception over to the background thread
+     * @param exception The exception to report [not null]
+     * @return {@code true} if the exception was accepted, {@code false} if it was dropped
+     */
+    public boolean report(BusinessException exception) {
+        Objects.requireNonNull(exception, "The exception must not be null.");
+        reporting.incrementAndGet();
+        try {
+            if (closed) {
+                droppedCount.increment();
+                return false;
+            }
+            if (overflowPolicy == OverflowPolicy.SAMPLE
+                    && tail.get() - head >= capacity / 2
+                    && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+                droppedCount.increment();
+                return false;
+            }
+            while (!offer(exception)) {
+                if (overflowPolicy != OverflowPolicy.BLOCK || closed) {
+                    droppedCount.increment();
+                    return false;
+                }
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+            return true;
+        } finally {
+            reporting.decrementAndGet();
+        }
+    }
+
+    /** @return The number of exceptions written so far */
+    public long getReportedCount() {
+        return reportedCount.sum();
+    }
+
+    /** @return The number of exceptions dropped so far */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Stop accepting exceptions, write the pending ones, and stop the background thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean offer(BusinessException exception) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries.lazySet(index, exception);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // The consumer has not freed this slot yet : the buffer is full
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /** Only called by the consumer thread */
+    private BusinessException poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        BusinessException exception = entries.get(index);
+        entries.lazySet(index, null);
+        sequences.lazySet(index, position + capacity);
+        head = position + 1;
+        return exception;
+    }
+
+    private void consume() {
+        StringBuilder batch = new StringBuilder(4096);
+        String lineSeparator = System.lineSeparator();
+        while (true) {
+            boolean stopping = closed;
+            int count = 0;
+            BusinessException exception;
+            while (count < MAX_BATCH_SIZE && (exception = poll()) != null) {
+                int length = batch.length();
+                try {
+                    renderer.render(exception, batch).append(lineSeparator);
+                } catch (RuntimeException e) {
+                    // A failing frame must not kill the reporter, nor leave its partial rendering in the batch
+                    batch.setLength(length);
+                    batch.append(exception.getClass().getName()).append(" : context rendering failed : ").append(e).append(lineSeparator);
+                }
+                count++;
+            }
+            if (count > 0) {
+                printer.append(batch);
+                printer.flush();
+                reportedCount.add(count);
+                batch.setLength(0);
+            } else if (stopping && reporting.get() == 0 && head == tail.get()) {
+                // No thread can offer anymore, and every offered exception has been written
+                return;
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,364 @@
+package net.mokatech.exceptioncontext.report;
+
+import net.mokatech.exceptioncontext.BusinessContextProfiler;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.ContextRenderer;
+import net.mokatech.exceptioncontext.ErrorCode;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * <p>Collapses identical exceptions during exception storms.
+ * <p>Exceptions sharing the same class, message key and context path (the keys of all their frames) are only counted,
+ * and a single {@link ExceptionSummary} is emitted for them at the end of each time window, along with a few samples.
+ * Signatures are stored in a concurrent trie : each level of the trie interns a class, a message key, or a frame key
+ * (from the top of the context to its bottom), so that recording an exception only walks down existing nodes and
+ * updates striped counters, without allocating or locking anything once its signature has been seen.
+ * <p>By default, the message key is the name of the exception's {@link ErrorCode}, so that exceptions created from the
+ * same code are aggregated whatever their arguments. Exceptions without an error code are only aggregated by class and
+ * context path : their messages often embed variable values, which would defeat the aggregation. Subclasses can
+ * override {@link #messageKey(BusinessException)} to key them on their (constant) messages instead. Legacy frames
+ * without a key are all interned under {@link BusinessContextProfiler#UNNAMED_KEY}.
+ * <p>The trie is bounded : once it holds {@code maxNodes} nodes, new signatures are counted under an
+ * {@link #OVERFLOW_KEY} node, where they stop being told apart, and the nodes which have not been used for two
+ * windows are evicted when a window is closed. A node being recorded on is never evicted, and exceptions reaching a node
+ * which is being evicted are recorded again from the root of the trie, so that none of them is lost.
+ * <p>Windows are closed by a background thread. Exceptions recorded while a window is being closed may be counted in
+ * the next one.
+ */
+public class ExceptionAggregator implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_SAMPLES = 3;
+    public static final int DEFAULT_MAX_NODES = 10_000;
+    /** Key of the nodes counting the signatures recorded once the trie is full */
+    public static final String OVERFLOW_KEY = "<overflow>";
+
+    /** Message key of the exceptions without a message, as the trie's maps do not support {@code null} keys */
+    private static final Object NO_MESSAGE = new Object();
+
+    private final Consumer<? super ExceptionSummary> emitter;
+    private final int maxSamples;
+    private final int maxNodes;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final Node root = new Node(null);
+    private final ScheduledExecutorService scheduler;
+    private volatile long windowStartMillis = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    /**
+     * Create an aggregator printing its summaries on the given stream, with the default separator
+     * @param printer The target stream [not null]
+     * @param window The length of the time windows
+     * @param unit The unit of {@code window} [not null]
+     */
+    public ExceptionAggregator(PrintStream printer, long window, TimeUnit unit) {
+        this(printingEmitter(Objects.requireNonNull(printer, "The printer must not be null.")), window, unit, DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * @param emitter Called with each summary, at the end of each window, from the background thread [not null]
+     * @param window The length of the time windows
+     * @param unit The unit of {@code window} [not null]
+     * @param maxSamples The maximum number of exceptions kept as samples, per signature and window
+     */
+    public ExceptionAggregator(Consumer<? super ExceptionSummary> emitter, long window, TimeUnit unit, int maxSamples) {
+        this(emitter, window, unit, maxSamples, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param emitter Called with each summary, at the end of each window, from the background thread [not null]
+     * @param window The length of the time windows
+     * @param unit The unit of {@code window} [not null]
+     * @param maxSamples The maximum number of exceptions kept as samples, per signature and window
+     * @param maxNodes The maximum number of nodes of the signature trie, beyond which new signatures overflow
+     */
+    public ExceptionAggregator(Consumer<? super ExceptionSummary> emitter, long window, TimeUnit unit, int maxSamples, int maxNodes) {
+        this.emitter = Objects.requireNonNull(emitter, "The emitter must not be null.");
+        Objects.requireNonNull(unit, "The unit must not be null.");
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window : " + window);
+        }
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of samples : " + maxSamples);
+        }
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of nodes : " + maxNodes);
+        }
+        this.maxSamples = maxSamples;
+        this.maxNodes = maxNodes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "business-exception-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::flush, window, window, unit);
+    }
+
+    private static Consumer<ExceptionSummary> printingEmitter(PrintStream printer) {
+        StringBuilder buffer = new StringBuilder(1024);
+        return summary -> {
+            // Only called from the background thread
+            buffer.setLength(0);
+            summary.renderTo(buffer, ContextRenderer.DEFAULT_SEPARATOR).append(System.lineSeparator());
+            printer.append(buffer);
+            printer.flush();
+        };
+    }
+
+    /**
+     * Count the given exception in the current window
+     * @param exception The exception [not null]
+     */
+    public void record(BusinessException exception) {
+        Objects.requireNonNull(exception, "The exception must not be null.");
+        if (closed) {
+            return;
+        }
+        String message = messageKey(exception);
+        Object messageKey = message == null ? NO_MESSAGE : message;
+        BusinessContextSnapshot context = exception.getContextSnapshot();
+        // Walked again from the root whenever the signature's nodes are being evicted
+        while (true) {
+            Node node = leaf(exception.getClass(), messageKey, context);
+            if (node != null && node.record(exception, maxSamples)) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    /** @return The node of the given signature, or {@code null} if one of its nodes is being evicted */
+    private Node leaf(Class<?> exceptionClass, Object messageKey, BusinessContextSnapshot context) {
+        Node node = child(root.child(exceptionClass), messageKey);
+        // Walk the snapshot itself, from the top, rather than copying its frames
+        for (BusinessContextSnapshot snapshot = context;
+             node != null && !snapshot.isEmpty() && node.key != OVERFLOW_KEY; snapshot = snapshot.pop()) {
+            String key = snapshot.peek().getKey();
+            node = child(node, key == null ? BusinessContextProfiler.UNNAMED_KEY : key);
+        }
+        return node;
+    }
+
+    /**
+     * @return The child of the given node, created if the trie is not full yet, or its overflow child ; {@code null} if
+     * it had to be created, but the given node is being evicted
+     */
+    private Node child(Node parent, Object key) {
+        Node child = parent.children.get(key);
+        if (child == null) {
+            if (nodeCount.get() >= maxNodes && key != OVERFLOW_KEY) {
+                return child(parent, OVERFLOW_KEY);
+            }
+            Node newChild = new Node(key);
+            // Only new signatures lock their parent, to exclude its eviction
+            synchronized (parent) {
+                if (parent.state != Node.LIVE) {
+                    return null;
+                }
+                child = parent.children.putIfAbsent(key, newChild);
+            }
+            if (child == null) {
+                nodeCount.incrementAndGet();
+                child = newChild;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * Get the key identifying the message of the given exception. Keys should come from a bounded set of values.
+     * @param exception The exception
+     * @return The key : the name of the exception's error code by default, or {@code null} if it has none
+     */
+    protected String messageKey(BusinessException exception) {
+        ErrorCode errorCode = exception.getErrorCode();
+        return errorCode == null ? null : errorCode.getName();
+    }
+
+    /**
+     * Emit the summaries of the current window, and start a new one
+     */
+    public synchronized void flush() {
+        long windowEnd = System.currentTimeMillis();
+        long windowStart = windowStartMillis;
+        windowStartMillis = windowEnd;
+        for (Node classNode : root.children.values()) {
+            for (Node messageNode : classNode.children.values()) {
+                if (emit(classNode, messageNode, messageNode, new ArrayList<>(), windowStart, windowEnd)) {
+                    evict(classNode, messageNode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emit the summaries of the given node and its descendants, evicting the idle ones
+     * @return {@code true} if the given node has been idle for two windows, and has no children left
+     */
+    @SuppressWarnings("unchecked")
+    private boolean emit(Node classNode, Node messageNode, Node node, List<String> path, long windowStart, long windowEnd) {
+        long count = node.count.sumThenReset();
+        if (count > 0) {
+            // The path is walked from the top of the context, and summaries list it from the bottom
+            List<String> summaryPath = new ArrayList<>(path);
+            Collections.reverse(summaryPath);
+            try {
+                emitter.accept(new ExceptionSummary((Class<? extends BusinessException>) classNode.key,
+                        messageNode.key == NO_MESSAGE ? null : (String) messageNode.key, summaryPath, count,
+                        node.takeSamples(), windowStart, windowEnd));
+            } catch (RuntimeException e) {
+                // A failing emitter must not stop the aggregation
+            }
+        }
+        for (Node child : node.children.values()) {
+            path.add((String) child.key);
+            if (emit(classNode, messageNode, child, path, windowStart, windowEnd)) {
+                evict(node, child);
+            }
+            path.remove(path.size() - 1);
+        }
+        boolean wasIdle = node.idle;
+        node.idle = count == 0;
+        return wasIdle && node.idle && node.children.isEmpty();
+    }
+
+    private void evict(Node parent, Node child) {
+        synchronized (child) {
+            if (!child.children.isEmpty()) {
+                return;
+            }
+            child.state = Node.EVICTING;
+        }
+        // Exceptions being recorded, or recorded since this window's count was taken, keep the node ; the recording
+        // threads are read first, as they only leave once they have counted their exception
+        if (child.recording.sum() != 0 || child.count.sum() != 0) {
+            child.state = Node.LIVE;
+            return;
+        }
+        if (parent.children.remove(child.key, child)) {
+            nodeCount.decrementAndGet();
+        }
+        // Only once the node cannot be found anymore, so that the exceptions recorded again get a new one
+        child.state = Node.EVICTED;
+    }
+
+    /**
+     * Stop counting exceptions, and emit the summaries of the current window
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /** Node of the signature trie */
+    private static final class Node {
+
+        static final int LIVE = 0;
+        static final int EVICTING = 1;
+        static final int EVICTED = 2;
+
+        private final Object key;
+        private final ConcurrentMap<Object, Node> children = new ConcurrentHashMap<>();
+        /** Number of exceptions whose signature ends on this node, in the current window */
+        private final LongAdder count = new LongAdder();
+        /** Number of threads recording an exception on this node, which must not be evicted meanwhile */
+        private final LongAdder recording = new LongAdder();
+        private final AtomicInteger sampleCount = new AtomicInteger();
+        private volatile AtomicReferenceArray<BusinessException> samples;
+        /** Whether no exception ended on this node during the last closed window ; only used by the flushing thread */
+        private boolean idle;
+        /** Whether this node is in the trie, being removed from it, or removed, in which case it must not be used */
+        private volatile int state = LIVE;
+
+        Node(Object key) {
+            this.key = key;
+        }
+
+        Node child(Object childKey) {
+            Node child = children.get(childKey);
+            if (child == null) {
+                Node newChild = new Node(childKey);
+                child = children.putIfAbsent(childKey, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            return child;
+        }
+
+        /** @return {@code false} if this node is being evicted, and the exception must be recorded again */
+        boolean record(BusinessException exception, int maxSamples) {
+            // Registered before checking the state : either the flushing thread sees us and keeps the node, or we see
+            // its mark and record the exception elsewhere
+            recording.increment();
+            try {
+                if (state != LIVE) {
+                    return false;
+                }
+                count.increment();
+                sample(exception, maxSamples);
+                return true;
+            } finally {
+                recording.decrement();
+            }
+        }
+
+        private void sample(BusinessException exception, int maxSamples) {
+            // Cheap check first, so that storms do not contend on the sample counter
+            if (sampleCount.get() < maxSamples) {
+                int index = sampleCount.getAndIncrement();
+                if (index < maxSamples) {
+                    AtomicReferenceArray<BusinessException> array = samples;
+                    if (array == null) {
+                        synchronized (this) {
+                            array = samples;
+                            if (array == null) {
+                                array = new AtomicReferenceArray<>(maxSamples);
+                                samples = array;
+                            }
+                        }
+                    }
+                    array.set(index, exception);
+                }
+            }
+        }
+
+        /** Only called by the flushing thread */
+        List<BusinessException> takeSamples() {
+            List<BusinessException> taken = new ArrayList<>();
+            AtomicReferenceArray<BusinessException> array = samples;
+            if (array != null) {
+                for (int i = 0; i < array.length(); i++) {
+                    BusinessException sample = array.getAndSet(i, null);
+                    if (sample != null) {
+                        taken.add(sample);
+                    }
+                }
+            }
+            sampleCount.set(0);
+            return taken;
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package net.mokatech.exceptioncontext.report;
+
+import net.mokatech.exceptioncontext.BusinessException;
+import net.mokatech.exceptioncontext.ContextFrame;
+import net.mokatech.exceptioncontext.ContextRenderer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Summary of the identical exceptions collapsed by an {@link ExceptionAggregator} during a time window.
+ * <p>Exceptions are identical when they share the same class, message key, and context path (the keys of all their
+ * frames). A few of them are kept as samples, to show the values of their frames' slots.
+ */
+public final class ExceptionSummary {
+
+    private final Class<? extends BusinessException> exceptionClass;
+    private final String messageKey;
+    private final List<String> path;
+    private final long count;
+    private final List<BusinessException> samples;
+    private final long windowStartMillis;
+    private final long windowEndMillis;
+
+    ExceptionSummary(Class<? extends BusinessException> exceptionClass, String messageKey, List<String> path, long count,
+                     List<BusinessException> samples, long windowStartMillis, long windowEndMillis) {
+        this.exceptionClass = exceptionClass;
+        this.messageKey = messageKey;
+        this.path = Collections.unmodifiableList(path);
+        this.count = count;
+        this.samples = Collections.unmodifiableList(samples);
+        this.windowStartMillis = windowStartMillis;
+        this.windowEndMillis = windowEndMillis;
+    }
+
+    /** @return The class of the exceptions */
+    public Class<? extends BusinessException> getExceptionClass() {
+        return exceptionClass;
+    }
+
+    /** @return The message key of the exceptions, or {@code null} if they have no message */
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    /** @return The keys of the exceptions' frames, from the bottom of the stack to the top */
+    public List<String> getPath() {
+        return path;
+    }
+
+    /** @return The number of exceptions created during the window */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return A few of the exceptions */
+    public List<BusinessException> getSamples() {
+        return samples;
+    }
+
+    /** @return The start of the window, in milliseconds since the epoch */
+    public long getWindowStartMillis() {
+        return windowStartMillis;
+    }
+
+    /** @return The end of the window, in milliseconds since the epoch */
+    public long getWindowEndMillis() {
+        return windowEndMillis;
+    }
+
+    /**
+     * Render this summary : the exceptions' class and message key, their count, and then each frame's key followed by
+     * the values of its slots in each sample
+     * @param buffer The buffer to append to
+     * @param separator The separator preceding each frame
+     * @return The buffer
+     */
+    public StringBuilder renderTo(StringBuilder buffer, CharSequence separator) {
+        buffer.append(exceptionClass.getName());
+        if (messageKey != null) {
+            buffer.append(": ").append(messageKey);
+        }
+        buffer.append(" (").append(count).append(count > 1 ? " times in " : " time in ")
+                .append(windowEndMillis - windowStartMillis).append("ms)");
+        ContextFrame[][] frames = new ContextFrame[samples.size()][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = samples.get(i).getContext();
+        }
+        for (int level = 0; level < path.size(); level++) {
+            buffer.append(separator);
+            String key = path.get(level);
+            if (ExceptionAggregator.OVERFLOW_KEY.equals(key)) {
+                // The frames beneath were not told apart
+                buffer.append(key);
+                continue;
+            }
+            // Paths may only hold the topmost frames (when the bottom ones overflowed) : align them on the top
+            ContextFrame first = frames.length > 0 ? frame(frames[0], level) : null;
+            if (first != null && first.getKey() == null) {
+                // Legacy frames have no key : show the first sample's message instead
+                first.renderTo(buffer);
+                continue;
+            }
+            buffer.append(key);
+            for (ContextFrame[] sample : frames) {
+                ContextFrame frame = frame(sample, level);
+                if (frame != null && frame.getSlotCount() > 0) {
+                    appendSlots(frame, buffer);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /** @return The frame of the given sample at the given level of the path, aligned on the top of the stack */
+    private ContextFrame frame(ContextFrame[] sample, int level) {
+        int index = sample.length - path.size() + level;
+        return index >= 0 && index < sample.length ? sample[index] : null;
+    }
+
+    private static void appendSlots(ContextFrame frame, StringBuilder buffer) {
+        buffer.append(" [");
+        for (int slot = 0; slot < frame.getSlotCount(); slot++) {
+            if (slot > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(frame.getValue(slot));
+        }
+        buffer.append(']');
+    }
+
+    @Override
+    public String toString() {
+        return renderTo(new StringBuilder(256), ContextRenderer.DEFAULT_SEPARATOR).toString();
+    }
+
+}
@@ -0,0 +1,96 @@
+package net.mokatech.exceptioncontext.holder;
+
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <p>Stores the context in a {@code ScopedValue}, which is much cheaper than a {@code ThreadLocal} on virtual threads.
+ * <p>Each task entered through {@link #runWithContext(BusinessContextSnapshot, Runnable)} or
+ * {@link #callWithContext(BusinessContextSnapshot, Callable)} (which the {@code concurrent} decorators do) gets its own
+ * scoped cell, owned by the thread binding it, which pushes and pops update in place.
+ * <p>Threads forked within a scope (eg. by a {@code StructuredTaskScope}) inherit its binding, but never update the
+ * forking thread's cell : each of them gets its own cell, starting from the forking thread's context, and kept in a
+ * {@code ThreadLocal} until it binds its own scope.
+ * <p>Code running outside of any scope falls back to a per-thread cell, also kept in a {@code ThreadLocal} : each
+ * access then costs a thread-local lookup, as with the {@link ThreadLocalBusinessContextHolderStrategy}, and each
+ * (virtual) thread running such code allocates its own cell and thread-local map entry. Entry points (request
+ * handlers, tasks...) should therefore run through {@code BusinessContext.runWith()} or the {@code concurrent}
+ * decorators, so that the code they call only pays for a scoped value lookup.
+ */
+public final class ScopedValueBusinessContextHolderStrategy implements BusinessContextHolderStrategy {
+
+    private static final ScopedValue<Cell> CONTEXT = ScopedValue.newInstance();
+
+    /** Cells of the code running outside of any scope */
+    private static final ThreadLocal<Cell> UNSCOPED_CONTEXT = ThreadLocal.withInitial(Cell::new);
+
+    /** Cells of the threads running within a scope bound by another thread */
+    private static final ThreadLocal<Cell> FORKED_CONTEXT = new ThreadLocal<>();
+
+    private static Cell cell() {
+        if (!CONTEXT.isBound()) {
+            return UNSCOPED_CONTEXT.get();
+        }
+        Cell cell = CONTEXT.get();
+        Thread thread = Thread.currentThread();
+        return cell.owner == thread ? cell : forkedCell(cell, thread);
+    }
+
+    /** @return The cell of the given thread, running within the scope of the given cell, owned by another thread */
+    private static Cell forkedCell(Cell scoped, Thread thread) {
+        Cell cell = FORKED_CONTEXT.get();
+        if (cell == null || cell.scope != scoped) {
+            // Forking happens-before the forked thread starts, so it sees at least the context it was forked under
+            cell = new Cell(thread, scoped, scoped.context);
+            FORKED_CONTEXT.set(cell);
+        }
+        return cell;
+    }
+
+    @Override
+    public BusinessContextSnapshot getContext() {
+        return cell().context;
+    }
+
+    @Override
+    public void setContext(BusinessContextSnapshot context) {
+        cell().context = context;
+    }
+
+    @Override
+    public void clearContext() {
+        cell().context = BusinessContextSnapshot.EMPTY;
+    }
+
+    @Override
+    public void runWithContext(BusinessContextSnapshot context, Runnable task) {
+        ScopedValue.where(CONTEXT, new Cell(Thread.currentThread(), null, context)).run(task);
+    }
+
+    @Override
+    public <V> V callWithContext(BusinessContextSnapshot context, Callable<V> task) throws Exception {
+        return ScopedValue.where(CONTEXT, new Cell(Thread.currentThread(), null, context)).call(task::call);
+    }
+
+    /** Mutable cell, only ever updated by its owner thread */
+    private static final class Cell {
+
+        private final Thread owner;
+        /** The scoped cell this cell was forked from, if any */
+        private final Cell scope;
+        /** Not volatile : forked threads only read it once, and snapshots are safely published by their final fields */
+        private BusinessContextSnapshot context;
+
+        Cell() {
+            this(Thread.currentThread(), null, BusinessContextSnapshot.EMPTY);
+        }
+
+        Cell(Thread owner, Cell scope, BusinessContextSnapshot context) {
+            this.owner = owner;
+            this.scope = scope;
+            this.context = context;
+        }
+    }
+
+}
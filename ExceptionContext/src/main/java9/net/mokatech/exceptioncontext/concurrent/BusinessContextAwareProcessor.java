@@ -0,0 +1,73 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+import net.mokatech.exceptioncontext.ContextFrame;
+
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * <p>Decorator for a {@code Flow.Processor}, ie. a stage of a pipeline : it handles the upstream signals with the
+ * business context captured when the decorator is created (with an optional frame per item, as
+ * {@link BusinessContextAwareSubscriber} does), and wraps its own subscribers as {@link BusinessContextAwarePublisher}
+ * does.
+ * <p>{@code Flow} is only available since Java 9 : this class lives in the {@code META-INF/versions/9} part of the
+ * multi-release JAR.
+ * @param <T> The subscribed item type
+ * @param <R> The published item type
+ */
+public class BusinessContextAwareProcessor<T, R> implements Flow.Processor<T, R> {
+
+    private final Flow.Processor<T, R> delegate;
+    private final BusinessContextAwareSubscriber<T> subscriber;
+    private final Function<? super R, ? extends ContextFrame> publishedItemFrame;
+
+    public BusinessContextAwareProcessor(Flow.Processor<T, R> delegate) {
+        this(delegate, BusinessContext.snapshot(), null, null);
+    }
+
+    public BusinessContextAwareProcessor(Flow.Processor<T, R> delegate, Function<? super T, ? extends ContextFrame> itemFrame) {
+        this(delegate, BusinessContext.snapshot(), itemFrame, null);
+    }
+
+    /**
+     * @param delegate The decorated processor
+     * @param newBusinessContext The context to set while handling the upstream signals
+     * @param itemFrame Builds the frame pushed while handling each upstream item, or {@code null} to push none
+     * @param publishedItemFrame Builds the frame pushed while subscribers handle each published item, or {@code null}
+     * to push none
+     */
+    public BusinessContextAwareProcessor(Flow.Processor<T, R> delegate, BusinessContextSnapshot newBusinessContext,
+                                         Function<? super T, ? extends ContextFrame> itemFrame,
+                                         Function<? super R, ? extends ContextFrame> publishedItemFrame) {
+        this.delegate = delegate;
+        this.subscriber = new BusinessContextAwareSubscriber<>(delegate, newBusinessContext, itemFrame);
+        this.publishedItemFrame = publishedItemFrame;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscriber.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(T item) {
+        subscriber.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        subscriber.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        subscriber.onComplete();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> downstream) {
+        delegate.subscribe(new BusinessContextAwareSubscriber<>(downstream, publishedItemFrame));
+    }
+}
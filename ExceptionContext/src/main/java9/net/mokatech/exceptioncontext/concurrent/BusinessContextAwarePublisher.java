@@ -0,0 +1,38 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.ContextFrame;
+
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * <p>Decorator that wraps the subscribers of the given {@code Flow.Publisher} (eg. a {@code SubmissionPublisher}) into
+ * {@link BusinessContextAwareSubscriber}s, so that each of them handles its signals with the business context of the
+ * thread which subscribed it.
+ * <p>{@code Flow} is only available since Java 9 : this class lives in the {@code META-INF/versions/9} part of the
+ * multi-release JAR.
+ * @param <T> The published item type
+ */
+public class BusinessContextAwarePublisher<T> implements Flow.Publisher<T> {
+
+    private final Flow.Publisher<T> delegate;
+    private final Function<? super T, ? extends ContextFrame> itemFrame;
+
+    public BusinessContextAwarePublisher(Flow.Publisher<T> delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * @param delegate The decorated publisher
+     * @param itemFrame Builds the frame pushed while subscribers handle each item, or {@code null} to push none
+     */
+    public BusinessContextAwarePublisher(Flow.Publisher<T> delegate, Function<? super T, ? extends ContextFrame> itemFrame) {
+        this.delegate = delegate;
+        this.itemFrame = itemFrame;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        delegate.subscribe(new BusinessContextAwareSubscriber<>(subscriber, itemFrame));
+    }
+}
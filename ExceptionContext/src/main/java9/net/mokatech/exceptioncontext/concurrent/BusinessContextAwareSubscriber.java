@@ -0,0 +1,70 @@
+package net.mokatech.exceptioncontext.concurrent;
+
+import net.mokatech.exceptioncontext.BusinessContext;
+import net.mokatech.exceptioncontext.BusinessContextSnapshot;
+import net.mokatech.exceptioncontext.ContextFrame;
+
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * <p>Decorator that sets the correct {@code BusinessContext} while the given {@code Flow.Subscriber} handles each
+ * signal, whichever thread delivers it, and then resets it to its previous value.
+ * <p>The context is captured once, when the decorator is created, and then restored as is for each signal. When a
+ * frame function is given, each item is handled with its own frame (eg. the record's key) pushed on top of that
+ * context, which only costs a single node.
+ * <p>{@code Flow} is only available since Java 9 : this class lives in the {@code META-INF/versions/9} part of the
+ * multi-release JAR.
+ * @param <T> The subscribed item type
+ */
+public class BusinessContextAwareSubscriber<T> implements Flow.Subscriber<T> {
+
+    private final Flow.Subscriber<? super T> delegate;
+    private final BusinessContextSnapshot newBusinessContext;
+    private final Function<? super T, ? extends ContextFrame> itemFrame;
+
+    public BusinessContextAwareSubscriber(Flow.Subscriber<? super T> delegate) {
+        this(delegate, BusinessContext.snapshot(), null);
+    }
+
+    public BusinessContextAwareSubscriber(Flow.Subscriber<? super T> delegate, Function<? super T, ? extends ContextFrame> itemFrame) {
+        this(delegate, BusinessContext.snapshot(), itemFrame);
+    }
+
+    /**
+     * @param delegate The decorated subscriber
+     * @param newBusinessContext The context to set while handling signals
+     * @param itemFrame Builds the frame pushed while handling each item, or {@code null} to push none
+     */
+    public BusinessContextAwareSubscriber(Flow.Subscriber<? super T> delegate, BusinessContextSnapshot newBusinessContext,
+                                          Function<? super T, ? extends ContextFrame> itemFrame) {
+        this.delegate = delegate;
+        this.newBusinessContext = newBusinessContext;
+        this.itemFrame = itemFrame;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        handle(newBusinessContext, () -> delegate.onSubscribe(subscription));
+    }
+
+    @Override
+    public void onNext(T item) {
+        handle(itemFrame == null ? newBusinessContext : newBusinessContext.push(itemFrame.apply(item)), () -> delegate.onNext(item));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        handle(newBusinessContext, () -> delegate.onError(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        handle(newBusinessContext, delegate::onComplete);
+    }
+
+    /** Handle a signal with the given context, through {@link BusinessContext#runWith(BusinessContextSnapshot, Runnable)} */
+    private static void handle(BusinessContextSnapshot snapshot, Runnable signal) {
+        BusinessContext.runWith(snapshot, signal);
+    }
+}
@@ -37,4 +37,12 @@ public class MyBusinessException extends BusinessException {
     public MyBusinessException(String message, Throwable cause, boolean enableSuppression, boolean withStackTrace) {
         super(message, cause, enableSuppression, withStackTrace);
     }
+
+    public MyBusinessException(ErrorCode errorCode, Object... arguments) {
+        super(errorCode, arguments);
+    }
+
+    public MyBusinessException(ErrorCode errorCode, Throwable cause, Object... arguments) {
+        super(errorCode, cause, arguments);
+    }
 }
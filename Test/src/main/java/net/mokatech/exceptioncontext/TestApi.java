@@ -9,6 +9,8 @@ import java.util.concurrent.TimeUnit;
 
 public class TestApi {
 
+    private static final FrameTemplate METHOD_2 = FrameTemplate.of("In method 2 with params {0} and {1}", FrameTemplate.SlotType.STRING, FrameTemplate.SlotType.INT);
+
     public static void main(String[] args) {
         TestApi test = new TestApi();
 
@@ -19,6 +21,7 @@ public class TestApi {
         } catch (BusinessException e) {
             e.printStackTrace();
             e.printContext();
+            System.err.println("Method 2 was called with bar = " + e.getContext()[1].getInt(1));
         }
 
         Util.delay(1);
@@ -38,7 +41,7 @@ public class TestApi {
     }
 
     public void method2(String foo, int bar) throws BusinessException {
-        BusinessContext.push(() -> "In method 2 with params " + foo + " and " + bar);
+        BusinessContext.push(METHOD_2.frame(bar, foo));
         try {
             methodThrowingBusinessException();
         } finally {
@@ -0,0 +1,41 @@
+package net.mokatech.exceptioncontext;
+
+import net.mokatech.exceptioncontext.annotation.InBusinessContext;
+import net.mokatech.exceptioncontext.annotation.InstrumentBusinessContext;
+import net.mokatech.exceptioncontext.annotation.ResetBusinessContext;
+
+@InstrumentBusinessContext
+public class TestProcessor {
+
+    public static void main(String[] args) {
+        // Generated at compile time by the BusinessContextProcessor
+        TestProcessor test = new BusinessContextAwareTestProcessor();
+        test.run();
+    }
+
+    @ResetBusinessContext
+    public void run() {
+        try {
+            method1("hello");
+        } catch (BusinessException e) {
+            e.printStackTrace();
+            e.printContext();
+        }
+    }
+
+    @InBusinessContext("In method 1 with param {0}")
+    public void method1(String foo) throws BusinessException {
+        method2(foo, 42);
+    }
+
+    @InBusinessContext("In method 2 with params {0} and {1} ")
+    public void method2(String foo, int bar) throws BusinessException {
+        methodThrowingBusinessException();
+    }
+
+    @InBusinessContext("In a method throwing BusinessException")
+    public void methodThrowingBusinessException() throws BusinessException {
+        throw new BusinessException("Oh noes ! A business problem !", false);
+    }
+
+}
@@ -0,0 +1,62 @@
+package net.mokatech.exceptioncontext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Propagates the business context from a "client" to a "server", through an in-process stand-in for a transport
+ * carrying headers (eg. HTTP or a message queue).
+ */
+public class TestPropagation {
+
+    private static final FrameTemplate ORDER = FrameTemplate.of("Processing order #{0}", FrameTemplate.SlotType.LONG);
+
+    /** The server's threads, which do not share anything with the client's */
+    private final ExecutorService server = Executors.newSingleThreadExecutor();
+
+    public static void main(String[] args) throws InterruptedException {
+        TestPropagation test = new TestPropagation();
+        BusinessContext.push(() -> "In the nightly book-keeping batch");
+        BusinessContext.push(ORDER.frame(42));
+        try {
+            test.call("payment");
+        } catch (ExecutionException e) {
+            ((BusinessException) e.getCause()).printContext();
+        } finally {
+            BusinessContext.reset();
+            test.server.shutdown();
+        }
+    }
+
+    /** Client side : send a request, with the current context as a header */
+    private String call(String request) throws InterruptedException, ExecutionException {
+        Map<String, String> headers = new HashMap<>();
+        String header = ContextHeaderCodec.DEFAULT.encode();
+        if (header != null) {
+            headers.put(ContextHeaderCodec.HEADER_NAME, header);
+        }
+        System.out.println(ContextHeaderCodec.HEADER_NAME + ": " + header);
+        Future<String> response = server.submit(() -> receive(request, headers));
+        return response.get();
+    }
+
+    /** Server side : handle the request under the client's context */
+    private String receive(String request, Map<String, String> headers) throws Exception {
+        BusinessContextSnapshot context = ContextHeaderCodec.DEFAULT.join(headers.get(ContextHeaderCodec.HEADER_NAME));
+        return BusinessContext.callWith(context, () -> handle(request));
+    }
+
+    private String handle(String request) throws BusinessException {
+        BusinessContext.push(() -> "Handling the " + request + " request");
+        try {
+            throw new MyBusinessException("The payment was rejected", false);
+        } finally {
+            BusinessContext.pop();
+        }
+    }
+
+}